@@ -24,7 +24,8 @@ CREATE TABLE `seckill_product` (
     `end_time` DATETIME NOT NULL COMMENT '秒杀结束时间',
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-    PRIMARY KEY (`id`)
+    PRIMARY KEY (`id`),
+    KEY `idx_start_time` (`start_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='秒杀商品表';
 
 -- 秒杀订单表
@@ -36,6 +37,9 @@ CREATE TABLE `seckill_product_order` (
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `pay_time` DATETIME COMMENT '支付时间',
     `cancel_time` DATETIME COMMENT '取消时间',
+    `product_name` VARCHAR(100) COMMENT '下单时商品名称',
+    `product_img` VARCHAR(200) COMMENT '下单时商品图片',
+    `product_price` INT COMMENT '下单时商品价格（分）',
     PRIMARY KEY (`id`),
     KEY `idx_user_id` (`user_id`),
     KEY `idx_product_id` (`seckill_product_id`),
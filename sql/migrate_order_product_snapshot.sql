@@ -0,0 +1,14 @@
+-- 订单表增加下单时的商品快照（已有库执行，新建库直接使用 create_tables.sql）
+ALTER TABLE `seckill_product_order`
+    ADD COLUMN `product_name` VARCHAR(100) COMMENT '下单时商品名称' AFTER `cancel_time`,
+    ADD COLUMN `product_img` VARCHAR(200) COMMENT '下单时商品图片' AFTER `product_name`,
+    ADD COLUMN `product_price` INT COMMENT '下单时商品价格（分）' AFTER `product_img`;
+
+-- 回填历史订单（按当前商品信息），数据量大时可按 id 区间分批执行
+-- 未回填的订单在查询时会批量查询商品信息兜底
+UPDATE `seckill_product_order` o
+    JOIN `seckill_product` p ON o.`seckill_product_id` = p.`id`
+SET o.`product_name`  = p.`name`,
+    o.`product_img`   = p.`img`,
+    o.`product_price` = p.`price`
+WHERE o.`product_name` IS NULL;
@@ -0,0 +1,3 @@
+-- 秒杀预热按开始时间范围查询商品（已有库执行，新建库直接使用 create_tables.sql）
+ALTER TABLE `seckill_product`
+    ADD KEY `idx_start_time` (`start_time`);
@@ -0,0 +1,45 @@
+package com.flash_seckill.benchmark;
+
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import com.flash_seckill.pojo.entity.SeckillProductOrder;
+
+import java.time.LocalDateTime;
+
+/**
+ * 基准测试数据
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    // 正在秒杀中的商品
+    static SeckillProduct product(Long id) {
+        LocalDateTime now = LocalDateTime.now();
+        return SeckillProduct.builder()
+                .id(id)
+                .name("iPhone 15 Pro 256GB 原色钛金属")
+                .img("https://img.example.com/product/" + id + ".png")
+                .desc("限时秒杀，每人限购一件")
+                .price(599900)
+                .stock(1000)
+                .startTime(now.minusHours(1))
+                .endTime(now.plusDays(1))
+                .createTime(now.minusDays(1))
+                .updateTime(now.minusDays(1))
+                .build();
+    }
+
+    static SeckillProductOrder order(SeckillProduct product) {
+        SeckillProductOrder order = new SeckillProductOrder();
+        order.setId(1234567890123456789L);
+        order.setStatus(0);
+        order.setUserId(10086L);
+        order.setSeckillProductId(product.getId());
+        order.setCreateTime(LocalDateTime.now());
+        order.setProductName(product.getName());
+        order.setProductImg(product.getImg());
+        order.setProductPrice(product.getPrice());
+        return order;
+    }
+}
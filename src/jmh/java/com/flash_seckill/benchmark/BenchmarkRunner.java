@@ -0,0 +1,120 @@
+package com.flash_seckill.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运行基准测试并与基线对比
+ * 基线只记录每个基准的平均耗时(ns/op)和每次调用分配的字节数(B/op)，超过基线一定比例即视为退化，进程以非0退出
+ * 用法：mvn -Pbenchmark test-compile exec:exec [-Dbenchmark.include=正则] [-Dbenchmark.update=true]
+ */
+public class BenchmarkRunner {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+    // 分配量很小时按绝对值比较，避免几个字节的波动被判为退化
+    private static final double ALLOC_TOLERANCE_BYTES = 64;
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : ".*";
+        File baselineFile = new File(System.getProperty("benchmark.baseline", "benchmarks/baseline.json"));
+        File resultFile = new File(System.getProperty("benchmark.result", "target/jmh/jmh-result.json"));
+        double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "0.2"));
+        boolean update = Boolean.parseBoolean(System.getProperty("benchmark.update", "false"));
+
+        resultFile.getParentFile().mkdirs();
+        new Runner(new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackageName() + "\\..*(" + include + ").*")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getPath())
+                .build()).run();
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Map<String, double[]> current = summarize(objectMapper.readTree(resultFile));
+        Map<String, double[]> baseline = baselineFile.exists()
+                ? read(objectMapper.readTree(baselineFile)) : new LinkedHashMap<>();
+
+        List<String> regressions = new ArrayList<>();
+        System.out.printf("%n%-75s %14s %14s %12s %12s%n", "Benchmark", "ns/op", "baseline", "B/op", "baseline");
+        current.forEach((name, value) -> {
+            double[] base = baseline.get(name);
+            System.out.printf("%-75s %14.1f %14s %12.1f %12s%n", name, value[0],
+                    base == null ? "-" : String.format("%.1f", base[0]), value[1],
+                    base == null ? "-" : String.format("%.1f", base[1]));
+            if (base == null) {
+                return;
+            }
+            if (value[0] > base[0] * (1 + threshold)) {
+                regressions.add(String.format("%s 耗时 %.1f ns/op，基线 %.1f ns/op", name, value[0], base[0]));
+            }
+            if (value[1] > base[1] * (1 + threshold) + ALLOC_TOLERANCE_BYTES) {
+                regressions.add(String.format("%s 分配 %.1f B/op，基线 %.1f B/op", name, value[1], base[1]));
+            }
+        });
+
+        if (update) {
+            // 合并本次结果写回基线（未运行的基准保留原值）
+            baseline.putAll(current);
+            objectMapper.writeValue(baselineFile, write(objectMapper, baseline));
+            System.out.println("\n基线已更新：" + baselineFile);
+            return;
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("\n超过基线 " + (int) (threshold * 100) + "% 的基准：");
+            regressions.forEach(r -> System.out.println("  " + r));
+            System.exit(1);
+        }
+    }
+
+    // 从JMH结果中提取 基准名(含参数) -> [ns/op, B/op]
+    private static Map<String, double[]> summarize(JsonNode results) {
+        Map<String, double[]> summary = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder name = new StringBuilder(result.get("benchmark").asText()
+                    .substring(BenchmarkRunner.class.getPackageName().length() + 1));
+            JsonNode params = result.get("params");
+            if (params != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    name.append(':').append(field.getKey()).append('=').append(field.getValue().asText());
+                }
+            }
+            JsonNode alloc = result.path("secondaryMetrics").path(ALLOC_METRIC).path("score");
+            summary.put(name.toString(), new double[]{
+                    result.get("primaryMetric").get("score").asDouble(),
+                    alloc.isMissingNode() ? 0 : alloc.asDouble()});
+        }
+        return summary;
+    }
+
+    private static Map<String, double[]> read(JsonNode baseline) {
+        Map<String, double[]> values = new LinkedHashMap<>();
+        baseline.fields().forEachRemaining(e -> values.put(e.getKey(),
+                new double[]{e.getValue().get("nsPerOp").asDouble(), e.getValue().get("bytesPerOp").asDouble()}));
+        return values;
+    }
+
+    private static ObjectNode write(ObjectMapper objectMapper, Map<String, double[]> values) {
+        ObjectNode root = objectMapper.createObjectNode();
+        values.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e -> {
+            ObjectNode node = root.putObject(e.getKey());
+            node.put("nsPerOp", Math.round(e.getValue()[0] * 10) / 10.0);
+            node.put("bytesPerOp", Math.round(e.getValue()[1] * 10) / 10.0);
+        });
+        return root;
+    }
+}
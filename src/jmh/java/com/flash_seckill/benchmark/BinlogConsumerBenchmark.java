@@ -0,0 +1,69 @@
+package com.flash_seckill.benchmark;
+
+import com.flash_seckill.rabbitmq.BinlogConsumer;
+import com.flash_seckill.utils.CacheUtil;
+import com.flash_seckill.utils.CatalogPageCache;
+import com.flash_seckill.utils.CountingBloomFilter;
+import com.flash_seckill.utils.SaleStateHolder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * canal binlog消息解析及分发（缓存删除、售卖状态广播发往替身redis）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinlogConsumerBenchmark {
+
+    private static final String DATA = "[{\"id\":\"1\",\"name\":\"iPhone 15 Pro 256GB\",\"img\":\"https://img.example.com/product/1.png\","
+            + "\"desc\":\"限时秒杀，每人限购一件\",\"price\":\"599900\",\"stock\":\"998\","
+            + "\"start_time\":\"2024-01-01 10:00:00\",\"end_time\":\"2024-01-02 10:00:00\","
+            + "\"create_time\":\"2023-12-31 10:00:00\",\"update_time\":\"2024-01-01 10:00:05\"}]";
+
+    // 消息类型：仅修改库存、修改商品名称、新增商品
+    @Param({"UPDATE_STOCK", "UPDATE_NAME", "INSERT"})
+    public String event;
+
+    private BinlogConsumer binlogConsumer;
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        StandIns.Redis redis = new StandIns.Redis();
+        CacheUtil cacheUtil = new CacheUtil(redis, 10000, 30);
+        SaleStateHolder saleStateHolder = new SaleStateHolder();
+        ReflectionTestUtils.setField(saleStateHolder, "stringRedisTemplate", redis);
+        CatalogPageCache catalogPageCache = new CatalogPageCache(1000, 60);
+        ReflectionTestUtils.setField(catalogPageCache, "stringRedisTemplate", redis);
+        binlogConsumer = new BinlogConsumer();
+        ReflectionTestUtils.setField(binlogConsumer, "cacheUtil", cacheUtil);
+        ReflectionTestUtils.setField(binlogConsumer, "saleStateHolder", saleStateHolder);
+        ReflectionTestUtils.setField(binlogConsumer, "catalogPageCache", catalogPageCache);
+        ReflectionTestUtils.setField(binlogConsumer, "productFilter", new CountingBloomFilter(10000, 0.01, System.currentTimeMillis()));
+        body = message(event).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void handleProductBinlog() {
+        binlogConsumer.handleProductBinlog(body);
+    }
+
+    private static String message(String event) {
+        String type = event.startsWith("UPDATE") ? "UPDATE" : event;
+        String old = switch (event) {
+            case "UPDATE_STOCK" -> "[{\"stock\":\"999\",\"update_time\":\"2024-01-01 10:00:04\"}]";
+            case "UPDATE_NAME" -> "[{\"name\":\"iPhone 15 Pro\",\"update_time\":\"2024-01-01 10:00:04\"}]";
+            default -> "null";
+        };
+        return "{\"data\":" + DATA + ",\"database\":\"flash_seckill\",\"es\":1704074405000,\"id\":1,\"isDdl\":false,"
+                + "\"mysqlType\":{\"id\":\"bigint\",\"name\":\"varchar(255)\",\"stock\":\"int\"},\"old\":" + old + ","
+                + "\"pkNames\":[\"id\"],\"sql\":\"\",\"table\":\"seckill_product\",\"ts\":1704074405123,\"type\":\"" + type + "\"}";
+    }
+}
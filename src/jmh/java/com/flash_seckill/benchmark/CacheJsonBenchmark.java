@@ -0,0 +1,58 @@
+package com.flash_seckill.benchmark;
+
+import cn.hutool.json.JSONUtil;
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import com.flash_seckill.utils.CacheUtil;
+import com.flash_seckill.utils.CountingBloomFilter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.flash_seckill.constants.RedisConstants.CACHE_PRODUCT_KEY;
+
+/**
+ * 商品缓存的JSON序列化，以及本地缓存未命中、redis（替身）命中时的完整读取路径
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheJsonBenchmark {
+
+    private static final Long PRODUCT_ID = 1L;
+
+    private SeckillProduct product;
+    private String json;
+    private CacheUtil cacheUtil;
+
+    @Setup
+    public void setup() {
+        product = BenchmarkData.product(PRODUCT_ID);
+        json = JSONUtil.toJsonStr(product);
+        // 本地缓存容量为0，每次都从redis读取并反序列化
+        cacheUtil = new CacheUtil(new StandIns.Redis(), 0, 30);
+        ReflectionTestUtils.setField(cacheUtil, "logicalTtlSeconds", 1800L);
+        cacheUtil.setWithLogicalExpire(CACHE_PRODUCT_KEY + PRODUCT_ID, product);
+        CountingBloomFilter productFilter = new CountingBloomFilter(10000, 0.01, System.currentTimeMillis());
+        productFilter.add(PRODUCT_ID);
+        ReflectionTestUtils.setField(cacheUtil, "productFilter", productFilter);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JSONUtil.toJsonStr(product);
+    }
+
+    @Benchmark
+    public SeckillProduct fromJson() {
+        return JSONUtil.toBean(json, SeckillProduct.class);
+    }
+
+    @Benchmark
+    public SeckillProduct getProductRedisHit() {
+        return cacheUtil.getProduct(CACHE_PRODUCT_KEY, PRODUCT_ID, SeckillProduct.class, id -> null);
+    }
+}
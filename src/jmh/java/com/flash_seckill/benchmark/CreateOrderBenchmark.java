@@ -0,0 +1,106 @@
+package com.flash_seckill.benchmark;
+
+import com.flash_seckill.config.RabbitMqConfig;
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import com.flash_seckill.pojo.entity.SeckillProductOrder;
+import com.flash_seckill.rabbitmq.OrderOutbox;
+import com.flash_seckill.service.ISeckillProductService;
+import com.flash_seckill.service.impl.SeckillProductOrderServiceImpl;
+import com.flash_seckill.utils.MemberStorage;
+import com.flash_seckill.utils.OrderStateUtil;
+import com.flash_seckill.utils.SaleStateHolder;
+import com.flash_seckill.utils.SeckillBatcher;
+import com.flash_seckill.utils.StockUtil;
+import com.flash_seckill.utils.UniqueId;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下单路径去掉网络I/O后的耗时和内存分配（配合 gc 分析器的 gc.alloc.rate.norm 查看每次下单分配的字节数）
+ * redis替换为内存替身（秒杀脚本固定返回成功），发件箱只做消息序列化不写文件
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CreateOrderBenchmark {
+
+    private static final Long PRODUCT_ID = 1L;
+
+    private SeckillProductOrderServiceImpl orderService;
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Setup
+    public void setup() {
+        StandIns.Redis redis = new StandIns.Redis();
+        SeckillProduct product = BenchmarkData.product(PRODUCT_ID);
+
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        SaleStateHolder saleStateHolder = new SaleStateHolder();
+        ReflectionTestUtils.setField(saleStateHolder, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(saleStateHolder, "taskScheduler", taskScheduler);
+        saleStateHolder.register(product);
+
+        SeckillBatcher seckillBatcher = new SeckillBatcher();
+        ReflectionTestUtils.setField(seckillBatcher, "enabled", false);
+        StockUtil stockUtil = new StockUtil();
+        ReflectionTestUtils.setField(stockUtil, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(stockUtil, "seckillBatcher", seckillBatcher);
+        ReflectionTestUtils.setField(stockUtil, "memberStorage", new MemberStorage(MemberStorage.MODE_SET));
+
+        OrderStateUtil orderStateUtil = new OrderStateUtil();
+        ReflectionTestUtils.setField(orderStateUtil, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(orderStateUtil, "stateTtlSeconds", 86400L);
+
+        ISeckillProductService productService = StandIns.stub(ISeckillProductService.class,
+                (method, args) -> "getCachedProduct".equals(method) ? product : StandIns.NOOP);
+
+        orderService = new SeckillProductOrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "uniqueId", new UniqueId(redis, 1000));
+        ReflectionTestUtils.setField(orderService, "orderOutbox", new SerializingOutbox(new RabbitMqConfig().jsonMessageConverter()));
+        ReflectionTestUtils.setField(orderService, "orderStateUtil", orderStateUtil);
+        ReflectionTestUtils.setField(orderService, "seckillProductService", productService);
+        ReflectionTestUtils.setField(orderService, "saleStateHolder", saleStateHolder);
+        ReflectionTestUtils.setField(orderService, "stockUtil", stockUtil);
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(10086L, null, List.of()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        taskScheduler.shutdown();
+    }
+
+    @Benchmark
+    public Long createOrder() {
+        return orderService.createOrder(PRODUCT_ID);
+    }
+
+    // 只序列化订单消息、不写入日志文件的发件箱
+    private static class SerializingOutbox extends OrderOutbox {
+
+        private final MessageConverter jsonMessageConverter;
+
+        private SerializingOutbox(MessageConverter jsonMessageConverter) {
+            this.jsonMessageConverter = jsonMessageConverter;
+        }
+
+        @Override
+        public void append(SeckillProductOrder order) {
+            jsonMessageConverter.toMessage(order, new MessageProperties());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.flash_seckill.benchmark;
+
+import com.flash_seckill.filter.JwtFilter;
+import com.flash_seckill.pojo.dto.JwtPrincipal;
+import com.flash_seckill.utils.JwtUtil;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌校验：一次解析、旧的四次解析、过滤器命中校验缓存
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+    private JwtFilter jwtFilter;
+    private String token;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private final FilterChain chain = (req, res) -> { };
+
+    @Setup
+    public void setup() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", "mySecretKey12345678901234567890123456789012");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 3600L);
+        jwtUtil.init();
+        token = jwtUtil.generateToken(1L, Map.of("username", "benchmark", "role", List.of("ROLE_USER")));
+
+        jwtFilter = new JwtFilter(10000, 300);
+        ReflectionTestUtils.setField(jwtFilter, "jwtUtil", jwtUtil);
+        request = new MockHttpServletRequest("POST", "/api/order/seckill/1");
+        request.addHeader("Authorization", "Bearer " + token);
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public JwtPrincipal parse() {
+        return jwtUtil.parse(token);
+    }
+
+    // 旧的过滤器实现：每个字段单独验签解析一次
+    @Benchmark
+    public void parseEachClaim(Blackhole blackhole) {
+        blackhole.consume(jwtUtil.getUsername(token));
+        blackhole.consume(jwtUtil.isTokenExpired(token));
+        blackhole.consume(jwtUtil.getUserId(token));
+        blackhole.consume(jwtUtil.getRole(token));
+    }
+
+    @Benchmark
+    public void filterCached() throws Exception {
+        jwtFilter.doFilter(request, response, chain);
+        SecurityContextHolder.clearContext();
+    }
+}
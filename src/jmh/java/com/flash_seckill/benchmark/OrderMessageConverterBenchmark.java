@@ -0,0 +1,45 @@
+package com.flash_seckill.benchmark;
+
+import com.flash_seckill.config.RabbitMqConfig;
+import com.flash_seckill.pojo.entity.SeckillProductOrder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单消息的Jackson序列化与反序列化（与发件箱、订单消费者使用同一个转换器）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderMessageConverterBenchmark {
+
+    private MessageConverter jsonMessageConverter;
+    private SeckillProductOrder order;
+    private Message message;
+
+    @Setup
+    public void setup() {
+        jsonMessageConverter = new RabbitMqConfig().jsonMessageConverter();
+        order = BenchmarkData.order(BenchmarkData.product(1L));
+        message = jsonMessageConverter.toMessage(order, new MessageProperties());
+        // 与监听器一致，按方法参数类型反序列化
+        message.getMessageProperties().setInferredArgumentType(SeckillProductOrder.class);
+    }
+
+    @Benchmark
+    public Message toMessage() {
+        return jsonMessageConverter.toMessage(order, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object fromMessage() {
+        return jsonMessageConverter.fromMessage(message);
+    }
+}
@@ -0,0 +1,127 @@
+package com.flash_seckill.benchmark;
+
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试使用的进程内替身，代替redis等外部依赖
+ */
+public final class StandIns {
+
+    // stub中表示使用默认返回值
+    public static final Object NOOP = new Object();
+
+    private StandIns() {
+    }
+
+    // 所有方法均为空操作的接口实现：返回接口类型时递归生成替身，基本类型返回0/false，其余返回null
+    @SuppressWarnings("unchecked")
+    public static <T> T noop(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> defaultValue(proxy, method, args));
+    }
+
+    // 仅替换部分方法的接口实现，handler返回 NOOP 时使用默认返回值
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.handle(method.getName(), args == null ? new Object[0] : args);
+            return result == NOOP ? defaultValue(proxy, method, args) : result;
+        });
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        Object handle(String method, Object[] args) throws Throwable;
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "StandIn";
+            };
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            return null;
+        }
+        if (returnType.isPrimitive()) {
+            return Array.get(Array.newInstance(returnType, 1), 0);
+        }
+        if (returnType.isInterface() && !returnType.getName().startsWith("java.")) {
+            return noop(returnType);
+        }
+        return null;
+    }
+
+    /**
+     * 内存版 StringRedisTemplate：字符串读写、自增在本地map中完成，
+     * pipeline中的命令直接丢弃，lua脚本返回预设结果，发布消息为空操作
+     */
+    public static class Redis extends StringRedisTemplate {
+
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final ValueOperations<String, String> valueOperations = stub(ValueOperations.class, (method, args) -> {
+            switch (method) {
+                case "get":
+                    return values.get((String) args[0]);
+                case "set":
+                    values.put((String) args[0], (String) args[1]);
+                    return null;
+                case "increment":
+                    long delta = args.length > 1 ? ((Number) args[1]).longValue() : 1L;
+                    return Long.valueOf(values.merge((String) args[0], String.valueOf(delta),
+                            (old, d) -> String.valueOf(Long.parseLong(old) + Long.parseLong(d))));
+                default:
+                    return NOOP;
+            }
+        });
+        private final RedisOperations<String, String> pipeline = noop(RedisOperations.class);
+        // lua脚本的返回值
+        private volatile Object scriptResult = 0L;
+
+        public void setScriptResult(Object scriptResult) {
+            this.scriptResult = scriptResult;
+        }
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            return valueOperations;
+        }
+
+        @Override
+        public List<Object> executePipelined(SessionCallback<?> session) {
+            session.execute(pipeline);
+            return Collections.emptyList();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            return (T) scriptResult;
+        }
+
+        @Override
+        public Boolean delete(String key) {
+            return values.remove(key) != null;
+        }
+
+        @Override
+        public Long convertAndSend(String channel, Object message) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.flash_seckill.benchmark;
+
+import com.flash_seckill.utils.UniqueId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单id生成：号段在内存中分配，只有租用新号段时访问（替身）redis
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UniqueIdBenchmark {
+
+    private UniqueId uniqueId;
+
+    @Setup
+    public void setup() {
+        uniqueId = new UniqueId(new StandIns.Redis(), 1000);
+    }
+
+    @Benchmark
+    public long nextId() {
+        return uniqueId.nextId("order");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long nextIdContended() {
+        return uniqueId.nextId("order");
+    }
+}
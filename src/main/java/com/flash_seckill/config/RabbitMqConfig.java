@@ -5,10 +5,13 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -24,9 +27,11 @@ public class RabbitMqConfig {
     // 队列
     public static final String ORDER_CREATE_QUEUE = "order.create.queue";
     public static final String ORDER_TIMEOUT_QUEUE = "order.timeout.queue";
+    public static final String ORDER_PAY_QUEUE = "order.pay.queue";
     public static final String BINLOG_QUEUE = "binlog.queue";
     public static final String DLQ_ORDER_CREATE = "order.create.dlq";
     public static final String DLQ_ORDER_TIMEOUT = "order.timeout.dlq";
+    public static final String DLQ_ORDER_PAY = "order.pay.dlq";
 
 
     // 路由键
@@ -34,6 +39,8 @@ public class RabbitMqConfig {
     public static final String ORDER_TIMEOUT_ROUTING_KEY = "order.timeout";
     public static final String DLQ_ORDER_CREATE_KEY = "order.create.dlq";
     public static final String DLQ_ORDER_TIMEOUT_KEY = "order.timeout.dlq";
+    public static final String ORDER_PAY_ROUTING_KEY = "order.pay";
+    public static final String DLQ_ORDER_PAY_KEY = "order.pay.dlq";
 
     // ===== 交换机 =====
     @Bean
@@ -110,6 +117,35 @@ public class RabbitMqConfig {
                 .with(DLQ_ORDER_TIMEOUT_KEY);
     }
 
+    // ===== 订单支付同步队列 & dlq =====
+    @Bean
+    public Queue orderPayQueue(){
+        // 订单支付同步队列 持久化 不自动删除，设置死信交换机和路由键
+        return QueueBuilder.durable(ORDER_PAY_QUEUE)
+                .withArgument("x-dead-letter-exchange", DLX_EXCHANGE)
+                .withArgument("x-dead-letter-routing-key", DLQ_ORDER_PAY_KEY)
+                .build();
+    }
+    @Bean
+    public Queue orderPayDlq(){
+        // 订单支付同步死信队列 持久化 不自动删除
+        return QueueBuilder.durable(DLQ_ORDER_PAY).build();
+    }
+    @Bean
+    public Binding orderPayBinding(){
+        // 绑定订单支付同步队列到订单交换机
+        return BindingBuilder.bind(orderPayQueue())
+                .to(orderExchange())
+                .with(ORDER_PAY_ROUTING_KEY);
+    }
+    @Bean
+    public Binding orderPayDlqBinding(){
+        // 绑定死信队列到死信交换机
+        return BindingBuilder.bind(orderPayDlq())
+                .to(dlxExchange())
+                .with(DLQ_ORDER_PAY_KEY);
+    }
+
     // ===== RabbitTemplate（发送端） =====
     @Bean
     @Primary
@@ -125,13 +161,33 @@ public class RabbitMqConfig {
             if (ack) {
                 log.info(type + "消息发送成功，orderId: {}", orderId);
             } else {
-                // 人工干预
+                // 订单创建消息由发件箱重新投递，其他消息人工干预
                 log.error(type + "消息发送失败, orderId: {}, cause: {}", orderId, cause);
             }
         }));
         return template;
     }
 
+    // ===== 批量消费容器工厂（订单创建） =====
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            @Value("${seckill.order.batch-size:100}") int batchSize,
+            @Value("${seckill.order.batch-receive-timeout-millis:100}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        // 沿用 spring.rabbitmq.listener.simple 的确认模式和重试配置
+        configurer.configure(factory, connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter());
+        // 攒够 batchSize 条或等待 receiveTimeout 后整批交给监听器
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        factory.setPrefetchCount(Math.max(batchSize, 250));
+        return factory;
+    }
+
     // ===== 创建消息转换器 支持LocalDateTime =====
     @Bean
     public MessageConverter jsonMessageConverter(){
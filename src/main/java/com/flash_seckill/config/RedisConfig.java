@@ -0,0 +1,22 @@
+package com.flash_seckill.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class RedisConfig {
+
+    // redis发布订阅监听容器，各节点共用一个订阅连接
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        // 单线程分发消息，保证同一节点按发布顺序处理（如先失效缓存，再重新加载售卖状态）
+        container.setTaskExecutor(Executors.newSingleThreadExecutor());
+        return container;
+    }
+}
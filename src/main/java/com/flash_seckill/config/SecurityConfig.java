@@ -2,6 +2,7 @@ package com.flash_seckill.config;
 
 import com.flash_seckill.filter.JwtFilter;
 import com.flash_seckill.service.impl.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -57,11 +58,14 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // 公开接口
                         .requestMatchers("/api/auth/**").permitAll()
+                        // 异步请求（SSE）结束时的再次分发，首次请求已经过认证
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
 
                         // 受保护接口
                         .requestMatchers("/api/product/add").hasRole("ADMIN")
                         .requestMatchers("/api/product/update").hasRole("ADMIN")
                         .requestMatchers("/api/product/delete/**").hasRole("ADMIN")
+                        .requestMatchers("/api/product/collect/*/import").hasRole("ADMIN")
 
 
                         .anyRequest().authenticated()
@@ -1,14 +1,20 @@
 package com.flash_seckill.config;
 
+import com.flash_seckill.interceptor.SeckillAdmissionInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 @EnableWebMvc
 public class WebConfig implements WebMvcConfigurer {
 
+    @Autowired
+    private SeckillAdmissionInterceptor seckillAdmissionInterceptor;
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -18,4 +24,11 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowCredentials(true)
                 .maxAge(3600);
     }
+
+    // 秒杀下单准入控制
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(seckillAdmissionInterceptor)
+                .addPathPatterns("/api/order/seckill/**");
+    }
 }
\ No newline at end of file
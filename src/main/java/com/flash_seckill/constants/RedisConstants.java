@@ -10,12 +10,74 @@ public class RedisConstants {
     public static final String LOCK_HEAT_KEY = "lock:heat";
     // 热度 key
     public static final String PRODUCT_HEAT_KEY = "product:heat:";
+    // 热度分桶hash（按时间分桶，field为商品id，value为桶内热度）
+    public static final String PRODUCT_HEAT_BUCKET_KEY = PRODUCT_HEAT_KEY + "bucket:";
+    // 窗口内有热度的商品zset（score为最近一次有热度的分桶）
+    public static final String PRODUCT_HEAT_ACTIVE_KEY = PRODUCT_HEAT_KEY + "active";
+    // 旧版热度计数key（product:heat:{id}:clickCount、product:heat:{id}:collectCount、product:heat:dirty），已由分桶取代
+    public static final String PRODUCT_HEAT_LEGACY_DIRTY_KEY = PRODUCT_HEAT_KEY + "dirty";
+    // 旧版热度key清理完成标记
+    public static final String PRODUCT_HEAT_LEGACY_CLEANED_KEY = PRODUCT_HEAT_KEY + "legacy:cleaned";
     // 热度排行榜
     public static final String RANK_ALL_KEY = "rank:all";
+    // 热度排行榜重建的临时key
+    public static final String RANK_ALL_TMP_KEY = "rank:all:tmp";
+    // 热度排行榜快照hash（version、body）
+    public static final String RANK_SNAPSHOT_KEY = "rank:snapshot";
+    // 热度排行榜快照版本号
+    public static final String RANK_SNAPSHOT_VERSION_KEY = "rank:snapshot:version";
+    // 热度排行榜快照广播频道
+    public static final String RANK_SNAPSHOT_CHANNEL = "channel:rank:snapshot";
     // 商品收藏set
     public static final String PRODUCT_COLLECT_KEY = "product:collect:";
+    // 商品收藏用户位图（bitmap存储方式）
+    public static final String PRODUCT_COLLECTOR_BITMAP_KEY = "product:collectors:";
     // 商品库存
     public static final String PRODUCT_STOCK_KEY = "product:stock:";
     // 商品下单用户set
     public static final String PRODUCT_USER_KEY = "product:user:";
+    // 商品下单用户位图（bitmap存储方式）
+    public static final String PRODUCT_BUYER_BITMAP_KEY = "product:buyers:";
+    // 商品库存分片数
+    public static final String PRODUCT_SHARDS_KEY = "product:shards:";
+    // 启用库存分片的商品set
+    public static final String SHARDED_PRODUCT_KEY = "product:sharded";
+    // 库存分片均衡 分布式锁 key
+    public static final String LOCK_STOCK_REBALANCE_KEY = "lock:stock:rebalance";
+    // 商品售卖状态广播频道
+    public static final String SALE_STATE_CHANNEL = "channel:product:sale";
+    // 商品缓存失效广播频道
+    public static final String CACHE_INVALIDATE_CHANNEL = "channel:product:cache";
+    // 商品分页缓存失效广播频道
+    public static final String CATALOG_INVALIDATE_CHANNEL = "channel:product:catalog";
+    // 订单超时时间轮（按秒分桶，score为到期秒）
+    public static final String ORDER_TIMEOUT_WHEEL_KEY = "order:timeout:wheel";
+    // 订单超时时间轮分桶set
+    public static final String ORDER_TIMEOUT_BUCKET_KEY = "order:timeout:bucket:";
+    // 订单超时处理 分布式锁 key
+    public static final String LOCK_ORDER_TIMEOUT_KEY = "lock:order:timeout";
+    // 已提交取消、尚未归还redis库存的订单id set（归还完成后移除，中断时由时间轮重放）
+    public static final String ORDER_RESTORE_PENDING_KEY = "order:restore:pending";
+    // 订单状态hash
+    public static final String ORDER_STATE_KEY = "order:state:";
+    // 缓存重建 分布式锁 key
+    public static final String LOCK_CACHE_KEY = "lock:cache:";
+    // 商品过滤器快照
+    public static final String PRODUCT_FILTER_KEY = "filter:product";
+    // 商品过滤器快照之后的增量list
+    public static final String PRODUCT_FILTER_DELTA_KEY = "filter:product:delta";
+    // 商品过滤器广播频道
+    public static final String PRODUCT_FILTER_CHANNEL = "channel:product:filter";
+    // 商品过滤器重建 分布式锁 key
+    public static final String LOCK_PRODUCT_FILTER_KEY = "lock:filter:product";
+    // 秒杀预热 分布式锁 key
+    public static final String LOCK_PREWARM_KEY = "lock:prewarm";
+    // 秒杀预热广播频道
+    public static final String PREWARM_CHANNEL = "channel:product:prewarm";
+    // 秒杀商品准入预算（按窗口重置为剩余库存的倍数）
+    public static final String ADMISSION_BUDGET_KEY = "admission:budget:";
+    // 已结束商品下单记录回收 分布式锁 key
+    public static final String LOCK_RECLAIM_KEY = "lock:reclaim";
+    // 旧版热度key清理 分布式锁 key
+    public static final String LOCK_HEAT_CLEANUP_KEY = "lock:heat:cleanup";
 }
@@ -5,9 +5,12 @@ import com.flash_seckill.result.Result;
 import com.flash_seckill.service.ISeckillProductService;
 import com.flash_seckill.pojo.vo.ProductDetailVO;
 import com.flash_seckill.pojo.vo.ProductListVO;
-import com.flash_seckill.pojo.vo.RankVO;
+import com.flash_seckill.utils.RankSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -17,6 +20,8 @@ public class SeckillProductController {
 
     @Autowired
     private ISeckillProductService seckillProductService;
+    @Autowired
+    private RankSnapshot rankSnapshot;
 
     // 添加秒杀商品
     @PostMapping("/add")
@@ -54,6 +59,12 @@ public class SeckillProductController {
         return Result.success(productDetailVO);
     }
 
+    // 订阅商品实时库存（SSE，事件名为stock）
+    @GetMapping(value = "/{id}/stock/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStock(@PathVariable Long id) {
+        return seckillProductService.streamStock(id);
+    }
+
     // 收藏商品
     @PostMapping("/collect/{id}")
     public Result collect(@PathVariable Long id) {
@@ -61,10 +72,17 @@ public class SeckillProductController {
         return Result.success();
     }
 
-    // 获取商品排行榜
+    // 批量导入收藏，返回新收藏的用户数
+    @PostMapping("/collect/{id}/import")
+    public Result<Long> importCollects(@PathVariable Long id, @RequestBody List<Long> userIds) {
+        return Result.success(seckillProductService.importCollects(id, userIds));
+    }
+
+    // 获取商品排行榜（直接返回序列化好的排行榜快照）
     @GetMapping("/rank")
-    public Result<List<RankVO>> getRank() {
-        List<RankVO> rankList = seckillProductService.getProductRank();
-        return Result.success(rankList);
+    public ResponseEntity<byte[]> getRank() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(rankSnapshot.getBody());
     }
 }
@@ -13,6 +13,7 @@ public enum ErrorCode {
     TOKEN_INVALID(1004, "Token无效"),
     TOKEN_FORMAT_ERROR(1005, "Token格式错误"),
     TOKEN_SIGNATURE_ERROR(1006, "Token签名验证失败"),
+    TOO_MANY_REQUESTS(1007, "请求过于频繁，请稍后重试"),
     
     // 用户相关错误 (2000-2999)
     USER_NOT_FOUND(2001, "用户不存在"),
@@ -29,6 +30,7 @@ public enum ErrorCode {
     ORDER_STATUS_ERROR(4002, "订单状态错误"),
     ORDER_REPEAT_SECKILL(4003, "重复秒杀"),
     ORDER_PERMISSION_DENIED(4004, "订单权限不足"),
+    ORDER_SECKILL_BUSY(4005, "秒杀人数过多，本次未下单，请稍后重试"),
     
     // 业务逻辑错误 (5000-5999)
     BUSINESS_ERROR(5001, "业务逻辑错误");
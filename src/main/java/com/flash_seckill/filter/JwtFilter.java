@@ -1,18 +1,25 @@
 package com.flash_seckill.filter;
 
+import com.flash_seckill.pojo.dto.JwtPrincipal;
 import com.flash_seckill.service.impl.UserDetailsServiceImpl;
 import com.flash_seckill.utils.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtFilter extends OncePerRequestFilter {
@@ -23,28 +30,38 @@ public class JwtFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsServiceImpl userDetailService;
 
+    // 最近校验通过的令牌，key为令牌的SHA-256摘要，命中时无需验签和解析
+    private final Cache<String, JwtPrincipal> verifiedTokens;
+
+    public JwtFilter(@Value("${seckill.jwt.cache-max-size:10000}") long cacheMaxSize,
+                     @Value("${seckill.jwt.cache-ttl-seconds:300}") long cacheTtlSeconds) {
+        this.verifiedTokens = CacheBuilder.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         final String authorization = request.getHeader("Authorization");
-        String username = null;
-        String token = null;
+        JwtPrincipal principal = null;
 
         try {
-            // 提取用户名
+            // 校验令牌并提取用户信息
             if (authorization != null && authorization.startsWith("Bearer")) {
-                token = authorization.substring(7);
-                username = jwtUtil.getUsername(token);
+                principal = verify(authorization.substring(7));
             }
 
             // 将用户信息存入 SecurityContextHolder
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                if (!jwtUtil.isTokenExpired(token)) {
+            if (principal != null && principal.getUsername() != null
+                    && SecurityContextHolder.getContext().getAuthentication() == null) {
+                if (!principal.isExpired(System.currentTimeMillis())) {
                     // 创建 已认证令牌 存入 用户ID 和 角色信息
                     UsernamePasswordAuthenticationToken authenticationToken =
                             new UsernamePasswordAuthenticationToken(
-                                    jwtUtil.getUserId(token),
+                                    principal.getUserId(),
                                     null,
-                                    jwtUtil.getRole(token));
+                                    principal.getAuthorities());
                     // 将已认证令牌存入 SecurityContextHolder
                     SecurityContextHolder.getContext().setAuthentication(authenticationToken);
                 }
@@ -58,4 +75,17 @@ public class JwtFilter extends OncePerRequestFilter {
             response.getWriter().write("{\"code\":401,\"msg\":\"Token无效\"}");
         }
     }
+
+    // 优先使用缓存的校验结果，未命中或已过期时重新验签（过期令牌会抛出异常）
+    private JwtPrincipal verify(String token) {
+        String digest = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        JwtPrincipal principal = verifiedTokens.getIfPresent(digest);
+        if (principal != null && !principal.isExpired(System.currentTimeMillis())) {
+            return principal;
+        }
+        verifiedTokens.invalidate(digest);
+        principal = jwtUtil.parse(token);
+        verifiedTokens.put(digest, principal);
+        return principal;
+    }
 }
@@ -0,0 +1,81 @@
+package com.flash_seckill.interceptor;
+
+import com.flash_seckill.exception.ErrorCode;
+import com.flash_seckill.utils.AdmissionControl;
+import com.flash_seckill.utils.SaleStateHolder;
+import com.flash_seckill.utils.SaleStateHolder.SaleState;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * 秒杀下单准入拦截
+ * 依次检查IP、用户令牌桶和商品准入预算，超出的请求直接返回预先序列化好的响应，不访问redis和MQ
+ */
+@Component
+public class SeckillAdmissionInterceptor implements HandlerInterceptor {
+
+    // 拒绝时的响应体
+    private static final byte[] REJECTED = ("{\"code\":" + ErrorCode.TOO_MANY_REQUESTS.getCode()
+            + ",\"msg\":\"" + ErrorCode.TOO_MANY_REQUESTS.getMessage() + "\",\"data\":null}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private AdmissionControl admissionControl;
+    @Autowired
+    private SaleStateHolder saleStateHolder;
+
+    // 是否按IP限流
+    @Value("${seckill.admission.ip-enabled:true}")
+    private boolean ipEnabled;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 客户端IP由 server.forward-headers-strategy 从受信任代理的转发头解析
+        if (ipEnabled && !admissionControl.tryAcquireIp(request.getRemoteAddr())) {
+            return reject(response);
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Long userId
+                && !admissionControl.tryAcquireUser(userId)) {
+            return reject(response);
+        }
+        Long productId = productId(request);
+        // 只有售卖中的商品需要预算，其余状态由下单接口在本地直接拒绝
+        if (productId != null && saleStateHolder.getState(productId) == SaleState.OPEN
+                && !admissionControl.tryAcquireBudget(productId)) {
+            return reject(response);
+        }
+        return true;
+    }
+
+    private Long productId(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables instanceof Map<?, ?> map && map.get("id") != null) {
+            try {
+                return Long.valueOf(map.get("id").toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private boolean reject(HttpServletResponse response) throws Exception {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType("application/json;charset=UTF-8");
+        response.setContentLength(REJECTED.length);
+        response.getOutputStream().write(REJECTED);
+        return false;
+    }
+}
@@ -2,13 +2,27 @@ package com.flash_seckill.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.flash_seckill.pojo.entity.SeckillProduct;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
 
 public interface SeckillProductMapper extends BaseMapper<SeckillProduct> {
 
     @Select("select id from seckill_product")
     Collection<Long> idList();
+
+    @Select("select id from seckill_product where id > #{id}")
+    Collection<Long> idListAfter(Long id);
+
+    // 商品列表分页：id小于lastId的size条商品，只查询列表所需的列
+    @Select("select id, name, img, price, stock from seckill_product where id < #{lastId} order by id desc limit #{size}")
+    List<SeckillProduct> selectPageBefore(@Param("lastId") long lastId, @Param("size") int size);
+
+    // 即将开始（开始时间早于 to）且尚未结束（结束时间晚于 from）的商品
+    @Select("select * from seckill_product where start_time <= #{to} and end_time > #{from}")
+    List<SeckillProduct> selectUpcoming(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 }
@@ -2,6 +2,21 @@ package com.flash_seckill.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.flash_seckill.pojo.entity.SeckillProductOrder;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 public interface SeckillProductOrderMapper extends BaseMapper<SeckillProductOrder> {
+
+    // 多行插入订单
+    @Insert("<script>" +
+            "insert into seckill_product_order (id, user_id, seckill_product_id, status, create_time, pay_time, cancel_time, " +
+            "product_name, product_img, product_price) values " +
+            "<foreach collection='orders' item='o' separator=','>" +
+            "(#{o.id}, #{o.userId}, #{o.seckillProductId}, #{o.status}, #{o.createTime}, #{o.payTime}, #{o.cancelTime}, " +
+            "#{o.productName}, #{o.productImg}, #{o.productPrice})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("orders") List<SeckillProductOrder> orders);
 }
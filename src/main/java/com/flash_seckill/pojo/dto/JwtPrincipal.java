@@ -0,0 +1,23 @@
+package com.flash_seckill.pojo.dto;
+
+import lombok.Value;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+/**
+ * 校验通过的令牌信息（一次解析得到，不可变）
+ */
+@Value
+public class JwtPrincipal {
+
+    Long userId;
+    String username;
+    List<GrantedAuthority> authorities;
+    // 过期时间（毫秒时间戳）
+    long expiration;
+
+    public boolean isExpired(long now) {
+        return expiration <= now;
+    }
+}
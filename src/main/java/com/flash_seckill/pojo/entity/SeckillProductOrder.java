@@ -24,4 +24,8 @@ public class SeckillProductOrder {
     private LocalDateTime createTime;
     private LocalDateTime payTime;
     private LocalDateTime cancelTime;
+    // 下单时的商品快照
+    private String productName;
+    private String productImg;
+    private Integer productPrice;
 }
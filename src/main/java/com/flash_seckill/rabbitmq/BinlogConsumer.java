@@ -2,10 +2,12 @@ package com.flash_seckill.rabbitmq;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flash_seckill.utils.CacheUtil;
+import com.flash_seckill.utils.CatalogPageCache;
+import com.flash_seckill.utils.ProductFilter;
+import com.flash_seckill.utils.SaleStateHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
@@ -21,10 +23,19 @@ import static com.flash_seckill.constants.RedisConstants.CACHE_PRODUCT_KEY;
 @Component
 public class BinlogConsumer {
 
-    @Autowired
-    private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private CacheUtil cacheUtil;
+    @Autowired
+    private SaleStateHolder saleStateHolder;
+    @Autowired
+    private ProductFilter productFilter;
+    @Autowired
+    private CatalogPageCache catalogPageCache;
+
+    // 售卖状态相关字段（修改后需要各节点重新计算售卖状态）
+    private static final Set<String> SALE_STATE_FIELDS = Set.of("start_time", "end_time");
+    // 商品列表展示字段（修改后需要清空各节点的分页缓存）
+    private static final Set<String> CATALOG_FIELDS = Set.of("name", "img", "price");
 
     // ===== 监听product表的binlog =====
     @RabbitListener(queues = BINLOG_QUEUE)
@@ -43,22 +54,27 @@ public class BinlogConsumer {
             Object id = data.get(0).get("id");
             productId = id == null ? null : Long.valueOf(id.toString());
 
-            // ===== 新增数据 添加到布隆过滤器 =====
+            // ===== 新增数据 添加到商品过滤器 =====
             if ("INSERT".equals(type)) {
                 if (productId != null) {
-                    // 将数据添加到布隆过滤器
-                    cacheUtil.addToBloomFilter(productId);
-                    log.info("INSERT 添加商品至布隆过滤器: {}", productId);
+                    // 将数据添加到商品过滤器（广播到所有节点）
+                    productFilter.add(productId);
+                    log.info("INSERT 添加商品至商品过滤器: {}", productId);
                 }
+                // 新商品会出现在第一页，清空各节点的分页缓存
+                catalogPageCache.invalidateAll();
                 return;
             }
             // ===== 删除数据 直接删缓存 =====
             if ("DELETE".equals(type)) {
                 // 直接删缓存
                 if (productId != null) {
-                    stringRedisTemplate.delete(CACHE_PRODUCT_KEY + productId);
-                    log.info("DELETE 删除商品缓存: {}", CACHE_PRODUCT_KEY + productId);
+                    cacheUtil.invalidate(CACHE_PRODUCT_KEY, productId);
+                    saleStateHolder.publishEvict(productId);
+                    productFilter.remove(productId);
+                    log.info("DELETE 删除商品缓存并广播清除本地缓存: {}", CACHE_PRODUCT_KEY + productId);
                 }
+                catalogPageCache.invalidateAll();
                 return;
             }
             // ===== 更新数据 判断是否修改敏感字段 =====
@@ -69,13 +85,27 @@ public class BinlogConsumer {
                 Set<String> SENSITIVE_FIELDS = Set.of("name", "img", "desc", "price", "start_time", "end_time");
                 // old 不为空 且 有任一敏感字段被修改
                 if (old != null && !Collections.disjoint(old.keySet(), SENSITIVE_FIELDS)) {
-                    if (productId != null) {
-                        stringRedisTemplate.delete(CACHE_PRODUCT_KEY + productId);
-                        log.info("UPDATE 修改了缓存敏感字段，已删除商品缓存: {}", CACHE_PRODUCT_KEY + productId);
+                    if (productId != null && !Collections.disjoint(old.keySet(), SALE_STATE_FIELDS)) {
+                        // 修改了秒杀时间，售卖状态不能使用旧数据计算，直接删除缓存
+                        cacheUtil.invalidate(CACHE_PRODUCT_KEY, productId);
+                        log.info("UPDATE 修改了秒杀时间，已删除商品缓存: {}", CACHE_PRODUCT_KEY + productId);
+                    } else if (productId != null) {
+                        // 仅修改展示字段，标记逻辑过期而不是删除，热点商品不会有大量请求同时击穿到数据库
+                        cacheUtil.expire(CACHE_PRODUCT_KEY, productId);
+                        log.info("UPDATE 修改了缓存敏感字段，已标记商品缓存过期: {}", CACHE_PRODUCT_KEY + productId);
                     }
                 } else {
                     log.debug("UPDATE 仅修改了非敏感字段，跳过缓存删除");
                 }
+                // 修改了列表展示字段，清空各节点的分页缓存
+                if (old != null && !Collections.disjoint(old.keySet(), CATALOG_FIELDS)) {
+                    catalogPageCache.invalidateAll();
+                }
+                // 修改了秒杀时间，各节点重新加载售卖状态
+                if (old != null && productId != null && !Collections.disjoint(old.keySet(), SALE_STATE_FIELDS)) {
+                    saleStateHolder.publishEvict(productId);
+                    log.info("UPDATE 修改了售卖相关字段，已通知各节点重新加载售卖状态: {}", productId);
+                }
                 return;
             }
         } catch (Exception e) {
@@ -6,6 +6,7 @@ import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 import static com.flash_seckill.config.RabbitMqConfig.DLQ_ORDER_CREATE;
+import static com.flash_seckill.config.RabbitMqConfig.DLQ_ORDER_PAY;
 import static com.flash_seckill.config.RabbitMqConfig.DLQ_ORDER_TIMEOUT;
 
 @Component
@@ -23,4 +24,10 @@ public class DeadLetterConsumer {
     public void handleOrderTimeoutDL(Long orderId) {
         log.info("❌ 订单超时死信消息：订单id={}", orderId);
     }
+
+    // 订单支付同步死信消息
+    @RabbitListener(queues = DLQ_ORDER_PAY)
+    public void handleOrderPayDL(SeckillProductOrder order) {
+        log.info("❌ 订单支付同步死信消息：订单id={}，支付时间={}", order.getId(), order.getPayTime());
+    }
 }
@@ -0,0 +1,348 @@
+package com.flash_seckill.rabbitmq;
+
+import com.flash_seckill.pojo.entity.SeckillProductOrder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static com.flash_seckill.config.RabbitMqConfig.ORDER_CREATE_EXCHANGE;
+import static com.flash_seckill.config.RabbitMqConfig.ORDER_CREATE_ROUTING_KEY;
+import static com.flash_seckill.config.RabbitMqConfig.ORDER_PAY_ROUTING_KEY;
+
+/**
+ * 订单消息本地发件箱
+ * 秒杀成功后的下单消息、支付后的支付消息先追加写入内存映射的日志文件，由后台线程批量投递，
+ * 发布确认异步返回后在原位置标记，投递线程不等待确认；重启时重新投递未确认的记录（消费者按订单id幂等）
+ * 记录格式：[int 长度][byte 状态][long 订单id][消息体]，长度为0表示文件末尾；未确认的状态区分消息类型
+ */
+@Slf4j
+@Component
+public class OrderOutbox {
+
+    // 记录头长度：长度 + 状态 + 订单id
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES;
+    // 记录状态
+    private static final byte PENDING = 0;
+    private static final byte CONFIRMED = 1;
+    private static final byte PENDING_PAY = 2;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private MessageConverter jsonMessageConverter;
+
+    // 发件箱目录
+    @Value("${seckill.outbox.dir:./data/outbox}")
+    private String dir;
+    // 单个日志文件大小
+    @Value("${seckill.outbox.segment-size:67108864}")
+    private int segmentSize;
+    // 每批投递条数
+    @Value("${seckill.outbox.batch-size:256}")
+    private int batchSize;
+    // 等待发布确认超时时间（毫秒），超时未确认的消息重新投递
+    @Value("${seckill.outbox.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
+    // 每次追加后是否刷盘（关闭时可抵御进程崩溃，开启后可抵御系统崩溃）
+    @Value("${seckill.outbox.force-on-append:false}")
+    private boolean forceOnAppend;
+
+    // 日志文件，第一个为最早未确认完的文件，最后一个为当前写入的文件
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    // 当前写入的文件
+    private volatile Segment head;
+    // 投递进度：最早未确认的文件及位置
+    private Segment tail;
+    private int tailPosition;
+    private long nextSequence;
+    // 已投递、等待发布确认的记录（key为文件序号和位置）
+    private final ConcurrentHashMap<Long, Pending> inFlight = new ConcurrentHashMap<>();
+
+    // 启动时加载未确认完的日志文件
+    @PostConstruct
+    public void recover() throws IOException {
+        Path path = Paths.get(dir);
+        Files.createDirectories(path);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(path)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+        for (Path file : files) {
+            Segment segment = open(file);
+            segment.committed = scanEnd(segment.buffer);
+            segments.addLast(segment);
+            nextSequence = segment.sequence + 1;
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(open(segmentPath(nextSequence++)));
+        }
+        head = segments.peekLast();
+        tail = segments.peekFirst();
+        tailPosition = 0;
+        log.info("订单发件箱加载完成，日志文件数：{}", segments.size());
+    }
+
+    // 追加下单消息，写入内存映射文件后立即返回
+    public void append(SeckillProductOrder order) {
+        append(order, PENDING);
+    }
+
+    // 追加支付消息，写入内存映射文件后立即返回
+    public void appendPay(SeckillProductOrder order) {
+        append(order, PENDING_PAY);
+    }
+
+    private void append(SeckillProductOrder order, byte type) {
+        byte[] body = jsonMessageConverter.toMessage(order, new MessageProperties()).getBody();
+        int length = HEADER_SIZE + body.length;
+        if (length + Integer.BYTES > segmentSize) {
+            throw new IllegalArgumentException("订单消息超过发件箱文件大小");
+        }
+        synchronized (this) {
+            Segment segment = head;
+            // 剩余空间不足（保留结尾的长度0标记），切换新文件
+            if (segment.committed + length + Integer.BYTES > segmentSize) {
+                segment = roll();
+            }
+            int position = segment.committed;
+            MappedByteBuffer buffer = segment.buffer;
+            // 先写状态、订单id和消息体，最后写长度作为提交标记
+            buffer.put(position + Integer.BYTES, type);
+            buffer.putLong(position + Integer.BYTES + 1, order.getId());
+            buffer.put(position + HEADER_SIZE, body);
+            buffer.putInt(position, length);
+            if (forceOnAppend) {
+                buffer.force(position, length);
+            }
+            segment.committed = position + length;
+        }
+    }
+
+    // 批量投递未确认的消息，发布确认由回调异步标记
+    @Scheduled(fixedDelayString = "${seckill.outbox.publish-interval-millis:10}")
+    public void publish() {
+        // 跳过已确认的记录，并让超时未确认的记录重新投递
+        advance();
+        long now = System.currentTimeMillis();
+        inFlight.values().removeIf(pending -> {
+            if (now - pending.sentAt < confirmTimeoutMillis) {
+                return false;
+            }
+            log.warn("等待订单消息发布确认超时，等待重试：{}", pending.correlationData.getId());
+            return true;
+        });
+        List<Pending> batch = new ArrayList<>(batchSize);
+        synchronized (this) {
+            Segment segment = tail;
+            int position = tailPosition;
+            while (batch.size() < batchSize) {
+                if (position >= segment.committed) {
+                    // 当前文件已读完，继续读取下一个文件
+                    Segment next = nextOf(segment);
+                    if (next == null) {
+                        break;
+                    }
+                    segment = next;
+                    position = 0;
+                    continue;
+                }
+                int length = segment.buffer.getInt(position);
+                byte type = segment.buffer.get(position + Integer.BYTES);
+                if (type != CONFIRMED && !inFlight.containsKey(key(segment, position))) {
+                    batch.add(new Pending(segment, position, length, type));
+                }
+                position += length;
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        // 异步发送整批消息，不等待发布确认
+        for (Pending pending : batch) {
+            byte[] body = new byte[pending.length - HEADER_SIZE];
+            pending.segment.buffer.get(pending.position + HEADER_SIZE, body);
+            long orderId = pending.segment.buffer.getLong(pending.position + Integer.BYTES + 1);
+            MessageProperties properties = new MessageProperties();
+            properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            properties.setContentEncoding("UTF-8");
+            properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+            properties.setHeader("__TypeId__", SeckillProductOrder.class.getName());
+            boolean pay = pending.type == PENDING_PAY;
+            // CorrelationData 设置消息类型和订单ID，用于发布确认日志
+            pending.correlationData = new CorrelationData((pay ? "PAY_" : "CREATE_") + orderId);
+            pending.sentAt = System.currentTimeMillis();
+            long key = key(pending.segment, pending.position);
+            inFlight.put(key, pending);
+            // 确认回调：ack后在原位置标记已确认，nack或失败时移出等待集合，下次重新投递
+            pending.correlationData.getFuture().whenComplete((confirm, ex) -> {
+                if (ex == null && confirm.isAck()) {
+                    pending.segment.buffer.put(pending.position + Integer.BYTES, CONFIRMED);
+                } else {
+                    log.warn("订单消息未被确认，等待重试：{}", pending.correlationData.getId());
+                }
+                inFlight.remove(key, pending);
+            });
+            try {
+                rabbitTemplate.send(ORDER_CREATE_EXCHANGE, pay ? ORDER_PAY_ROUTING_KEY : ORDER_CREATE_ROUTING_KEY,
+                        new Message(body, properties), pending.correlationData);
+            } catch (Exception e) {
+                log.error("发件箱投递订单消息失败，等待重试，orderId: {}", orderId, e);
+                inFlight.remove(key, pending);
+            }
+        }
+        log.debug("发件箱投递订单消息：{} 条，等待确认：{} 条", batch.size(), inFlight.size());
+    }
+
+    // 记录在等待集合中的key：文件序号和位置
+    private long key(Segment segment, int position) {
+        return segment.sequence << 32 | position;
+    }
+
+    // 跳过已确认的记录，删除已全部确认的旧文件
+    private synchronized void advance() {
+        while (true) {
+            if (tailPosition < tail.committed) {
+                if (tail.buffer.get(tailPosition + Integer.BYTES) != CONFIRMED) {
+                    return;
+                }
+                tailPosition += tail.buffer.getInt(tailPosition);
+                continue;
+            }
+            if (tail == head) {
+                return;
+            }
+            // 旧文件已全部确认，删除
+            Segment done = segments.pollFirst();
+            close(done);
+            try {
+                Files.deleteIfExists(done.path);
+            } catch (IOException e) {
+                log.warn("删除发件箱文件失败：{}", done.path, e);
+            }
+            tail = segments.peekFirst();
+            tailPosition = 0;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            close(segment);
+        }
+    }
+
+    // 切换新的日志文件
+    private Segment roll() {
+        head.buffer.force();
+        try {
+            Segment segment = open(segmentPath(nextSequence++));
+            segments.addLast(segment);
+            head = segment;
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("创建发件箱文件失败", e);
+        }
+    }
+
+    private Segment nextOf(Segment segment) {
+        boolean found = false;
+        for (Segment s : segments) {
+            if (found) {
+                return s;
+            }
+            found = s == segment;
+        }
+        return null;
+    }
+
+    private Path segmentPath(long sequence) {
+        return Paths.get(dir, String.format("outbox-%020d.log", sequence));
+    }
+
+    private Segment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        String name = path.getFileName().toString();
+        long sequence = Long.parseLong(name.substring("outbox-".length(), name.length() - ".log".length()));
+        return new Segment(path, sequence, channel, buffer);
+    }
+
+    private void close(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("关闭发件箱文件失败：{}", segment.path, e);
+        }
+    }
+
+    // 扫描到第一个长度为0的位置，即已提交的末尾
+    private int scanEnd(MappedByteBuffer buffer) {
+        int position = 0;
+        while (position + Integer.BYTES <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + length > segmentSize) {
+                break;
+            }
+            position += length;
+        }
+        return position;
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long sequence;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // 已提交的写入位置
+        private volatile int committed;
+
+        private Segment(Path path, long sequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.sequence = sequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Pending {
+        private final Segment segment;
+        private final int position;
+        private final int length;
+        private final byte type;
+        private CorrelationData correlationData;
+        private long sentAt;
+
+        private Pending(Segment segment, int position, int length, byte type) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.type = type;
+        }
+    }
+}
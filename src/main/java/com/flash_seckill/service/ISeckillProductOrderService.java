@@ -5,6 +5,7 @@ import com.flash_seckill.pojo.entity.SeckillProductOrder;
 import com.flash_seckill.pojo.vo.OrderDetailVO;
 import com.flash_seckill.pojo.vo.OrderListVO;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ISeckillProductOrderService extends IService<SeckillProductOrder> {
@@ -16,4 +17,10 @@ public interface ISeckillProductOrderService extends IService<SeckillProductOrde
     void payOrder(Long orderId);
     // 游标查询订单
     List<OrderListVO> getOrdersByCursor (Long lastId, int size);
+    // 批量保存订单并扣减库存，返回实际新增的订单
+    List<SeckillProductOrder> saveOrders(List<SeckillProductOrder> orders);
+    // 同步redis中的支付状态到数据库
+    void syncPaidOrder(SeckillProductOrder order);
+    // 批量取消超时未支付订单并归还数据库库存，返回实际取消的订单
+    List<SeckillProductOrder> cancelTimeoutOrders(Collection<Long> orderIds);
 }
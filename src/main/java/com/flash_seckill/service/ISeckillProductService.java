@@ -7,6 +7,8 @@ import com.flash_seckill.pojo.vo.ProductDetailVO;
 import com.flash_seckill.pojo.vo.ProductListVO;
 import com.flash_seckill.pojo.vo.RankVO;
 
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
 import java.util.List;
 
 public interface ISeckillProductService extends IService<SeckillProduct> {
@@ -14,12 +16,18 @@ public interface ISeckillProductService extends IService<SeckillProduct> {
     void addProduct(SeckillProductDTO seckillProductDTO);
     // 收藏商品
     void collect(Long id);
+    // 批量导入收藏
+    long importCollects(Long id, List<Long> userIds);
     // 根据商品id查询商品详情
     ProductDetailVO queryById(Long id);
+    // 从多级缓存中查询商品
+    SeckillProduct getCachedProduct(Long id);
     // 游标查询秒杀商品
     List<ProductListVO> getProductsByCursor(Long lastId, int size);
     // 查询秒杀商品排行榜
     List<RankVO> getProductRank();
+    // 订阅商品实时库存
+    SseEmitter streamStock(Long id);
     // 修改秒杀商品
     void updateProduct(SeckillProductDTO seckillProductDTO);
     // 删除秒杀商品
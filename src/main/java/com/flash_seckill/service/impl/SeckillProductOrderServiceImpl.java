@@ -7,31 +7,35 @@ import com.flash_seckill.pojo.entity.SeckillProductOrder;
 import com.flash_seckill.exception.BusinessException;
 import com.flash_seckill.exception.ErrorCode;
 import com.flash_seckill.mapper.SeckillProductOrderMapper;
+import com.flash_seckill.rabbitmq.OrderOutbox;
 import com.flash_seckill.service.ISeckillProductOrderService;
 import com.flash_seckill.service.ISeckillProductService;
+import com.flash_seckill.utils.OrderStateUtil;
+import com.flash_seckill.utils.SaleStateHolder;
+import com.flash_seckill.utils.SaleStateHolder.SaleState;
+import com.flash_seckill.utils.StockUtil;
 import com.flash_seckill.utils.UniqueId;
 import com.flash_seckill.pojo.vo.OrderDetailVO;
 import com.flash_seckill.pojo.vo.OrderListVO;
 import com.rabbitmq.client.MessageProperties;
 import org.springframework.amqp.core.Correlation;
-import org.springframework.amqp.core.MessageDeliveryMode;
-import org.springframework.amqp.rabbit.connection.CorrelationData;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.security.core.context.SecurityContextHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-
-import static com.flash_seckill.config.RabbitMqConfig.ORDER_CREATE_EXCHANGE;
-import static com.flash_seckill.config.RabbitMqConfig.ORDER_CREATE_ROUTING_KEY;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -42,46 +46,50 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private OrderOutbox orderOutbox;
+    @Autowired
+    private OrderStateUtil orderStateUtil;
     @Autowired
     private ISeckillProductService seckillProductService;
-
-    // 秒杀脚本
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-
-    // 初始化
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    @Autowired
+    private SaleStateHolder saleStateHolder;
+    @Autowired
+    private StockUtil stockUtil;
 
     // 创建订单
     @Override
     public Long createOrder(Long productId) {
-        // 1. 查询商品信息
-        SeckillProduct product = seckillProductService.getById(productId);
-        // 检查商品是否存在
-        if (product == null) {
-            throw new BusinessException(ErrorCode.PRODUCT_NOT_FOUND);
+        // 1. 检查本地售卖状态，未加载时查询商品信息
+        SaleState state = saleStateHolder.getState(productId);
+        SeckillProduct product = null;
+        if (state == null) {
+            product = seckillProductService.getCachedProduct(productId);
+            // 检查商品是否存在
+            if (product == null) {
+                throw new BusinessException(ErrorCode.PRODUCT_NOT_FOUND);
+            }
+            state = saleStateHolder.register(product);
+        }
+        // 已售罄
+        if (state == SaleState.SOLD_OUT) {
+            throw new BusinessException(ErrorCode.PRODUCT_STOCK_NOT_ENOUGH);
         }
         // 检查是否在秒杀时间内
-        if (product.getStartTime().isAfter(LocalDateTime.now()) || product.getEndTime().isBefore(LocalDateTime.now())) {
+        if (state != SaleState.OPEN) {
             throw new BusinessException(ErrorCode.PRODUCT_NOT_IN_SECKILL_TIME);
         }
         // 获取用户ID
         Long userId = (Long) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        // 执行脚本（传入商品id和用户id）
-        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
-                Collections.emptyList(),
-                productId.toString(),
-                userId.toString());
+        // 执行秒杀脚本（传入商品id和用户id）
+        int r = stockUtil.seckill(productId, userId);
 
         // 2. 获取结果
-        int r = result.intValue();
         if (r != 0) {
             if (r == 1) {
-                // 2.1 库存不足
+                // 2.1 库存不足，所有分片之和为0时才标记售罄并通知其他节点（分片库存可能正在均衡）
+                if (stockUtil.getStock(productId) <= 0) {
+                    saleStateHolder.markSoldOut(productId);
+                }
                 throw new BusinessException(ErrorCode.PRODUCT_STOCK_NOT_ENOUGH);
             }
             if (r == 2) {
@@ -92,28 +100,27 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
 
         // 3. 有购买资格 生成订单ID
         Long orderId = uniqueId.nextId("order");
-        // 创建订单
+        if (product == null) {
+            product = seckillProductService.getCachedProduct(productId);
+        }
+        // 创建订单，记录下单时的商品快照
         SeckillProductOrder order = new SeckillProductOrder();
         order.setId(orderId);
         order.setStatus(0);
         order.setUserId(userId);
         order.setSeckillProductId(productId);
         order.setCreateTime(LocalDateTime.now());
+        if (product != null) {
+            order.setProductName(product.getName());
+            order.setProductImg(product.getImg());
+            order.setProductPrice(product.getPrice());
+        }
+
+        // 写入redis订单状态，订单落库前即可支付和查询
+        orderStateUtil.save(order);
 
-        // 4. 异步发送消息（消费者可靠性）
-        // 4.1 创建CorrelationData对象，设置消息类型和订单ID，用于发送失败后人工干预
-        CorrelationData correlationData = new CorrelationData("CREATE_" + orderId);
-        // 4.2 发送消息
-        rabbitTemplate.convertAndSend(
-                ORDER_CREATE_EXCHANGE,      // 交换机
-                ORDER_CREATE_ROUTING_KEY,   // 路由键
-                order,
-                msg -> {
-                    // 设置消息持久化
-                    msg.getMessageProperties().setDeliveryMode(MessageDeliveryMode.PERSISTENT);
-                    return msg;},
-                correlationData              // 订单id
-        );
+        // 4. 写入本地发件箱，由后台线程批量投递并等待发布确认（消费者可靠性）
+        orderOutbox.append(order);
         // 5. 返回订单ID
         return orderId;
     }
@@ -123,6 +130,32 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
     public void payOrder(Long orderId) {
         // 验证操作权限
         Long userId = (Long) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        LocalDateTime payTime = LocalDateTime.now();
+        // 在redis中原子切换订单状态
+        int r = orderStateUtil.pay(orderId, userId, payTime);
+        if (r == OrderStateUtil.PAY_NOT_FOUND) {
+            // redis中无订单状态（已过期），直接更新数据库
+            payOrderInDb(orderId, userId, payTime);
+            return;
+        }
+        if (r == OrderStateUtil.PAY_PERMISSION_DENIED) {
+            // 用户权限不足
+            throw new BusinessException(ErrorCode.ORDER_PERMISSION_DENIED);
+        }
+        if (r == OrderStateUtil.PAY_STATUS_ERROR) {
+            // 订单状态异常
+            throw new BusinessException(ErrorCode.ORDER_STATUS_ERROR);
+        }
+        // 写入本地发件箱，异步同步支付状态至数据库（投递失败会重试）
+        SeckillProductOrder order = new SeckillProductOrder();
+        order.setId(orderId);
+        order.setStatus(1);
+        order.setPayTime(payTime);
+        orderOutbox.appendPay(order);
+    }
+
+    // 数据库中支付订单
+    private void payOrderInDb(Long orderId, Long userId, LocalDateTime payTime) {
         SeckillProductOrder order = getById(orderId);
         if (order == null || !order.getUserId().equals(userId)) {
             // 订单不存在或用户权限不足
@@ -131,7 +164,7 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
         // 更新订单状态
         boolean isSuccess = update()
                 .setSql("status = 1")
-                .set("pay_time", LocalDateTime.now())
+                .set("pay_time", payTime)
                 .eq("id", orderId)
                 .eq("status", 0)
                 .update();
@@ -141,6 +174,21 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
         }
     }
 
+    // 同步redis中的支付状态到数据库
+    @Override
+    public void syncPaidOrder(SeckillProductOrder order) {
+        boolean isSuccess = update()
+                .setSql("status = 1")
+                .set("pay_time", order.getPayTime())
+                .eq("id", order.getId())
+                .eq("status", 0)
+                .update();
+        if (!isSuccess && getById(order.getId()) == null) {
+            // 订单尚未落库，抛出异常等待重试（落库时也会读取redis中的支付状态）
+            throw new BusinessException(ErrorCode.ORDER_NOT_FOUND);
+        }
+    }
+
     // 游标查询订单
     @Override
     public List<OrderListVO> getOrdersByCursor(Long lastId, int size) {
@@ -164,21 +212,33 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
                     .list();
         }
         
+        // 未回填商品快照的历史订单，一次批量查询商品信息
+        Set<Long> missing = orders.stream()
+                .filter(order -> order.getProductName() == null)
+                .map(SeckillProductOrder::getSeckillProductId)
+                .collect(Collectors.toSet());
+        Map<Long, SeckillProduct> products = missing.isEmpty() ? Collections.emptyMap()
+                : seckillProductService.listByIds(missing).stream()
+                        .collect(Collectors.toMap(SeckillProduct::getId, p -> p));
+
         // 转换为VO列表
         return orders.stream().map(order -> {
             OrderListVO vo = new OrderListVO();
             vo.setId(String.valueOf(order.getId()));
             vo.setStatus(order.getStatus());
             vo.setCreateTime(order.getCreateTime());
-            
-            // 查询关联的商品信息
-            SeckillProduct product = seckillProductService.getById(order.getSeckillProductId());
-            if (product != null) {
+
+            // 下单时的商品快照
+            vo.setProductName(order.getProductName());
+            vo.setImg(order.getProductImg());
+            vo.setPrice(order.getProductPrice());
+            SeckillProduct product = products.get(order.getSeckillProductId());
+            if (order.getProductName() == null && product != null) {
                 vo.setProductName(product.getName());
                 vo.setImg(product.getImg());
                 vo.setPrice(product.getPrice());
             }
-            
+
             return vo;
         }).toList();
     }
@@ -186,18 +246,103 @@ public class SeckillProductOrderServiceImpl extends ServiceImpl<SeckillProductOr
     // 根据订单id查询订单详情
     @Override
     public OrderDetailVO queryById(Long orderId) {
-        // 从数据库中查询订单数据
-        SeckillProductOrder order = getById(orderId);
+        // 优先从redis中查询订单状态，不存在时查询数据库
+        SeckillProductOrder order = orderStateUtil.get(orderId);
+        if (order == null) {
+            order = getById(orderId);
+        }
         if (order == null) {
             // 订单不存在
             throw new BusinessException(ErrorCode.ORDER_NOT_FOUND);
         }
         OrderDetailVO orderDetailVO = BeanUtil.copyProperties(order, OrderDetailVO.class);
-        SeckillProduct product = seckillProductService.getById(order.getSeckillProductId());
-        orderDetailVO.setProductName(product.getName());
-        orderDetailVO.setImg(product.getImg());
-        orderDetailVO.setPrice(product.getPrice());
+        // 下单时的商品快照，历史订单未回填时查询商品信息
+        if (order.getProductName() != null) {
+            orderDetailVO.setProductName(order.getProductName());
+            orderDetailVO.setImg(order.getProductImg());
+            orderDetailVO.setPrice(order.getProductPrice());
+        } else {
+            SeckillProduct product = seckillProductService.getCachedProduct(order.getSeckillProductId());
+            orderDetailVO.setProductName(product.getName());
+            orderDetailVO.setImg(product.getImg());
+            orderDetailVO.setPrice(product.getPrice());
+        }
         
         return orderDetailVO;
     }
+
+    // 批量保存订单并扣减库存（同一事务）
+    @Override
+    @Transactional
+    public List<SeckillProductOrder> saveOrders(List<SeckillProductOrder> orders) {
+        // 一次IN查询过滤已存在的订单，同时去除批次内的重复消息
+        Set<Long> ids = orders.stream().map(SeckillProductOrder::getId).collect(Collectors.toSet());
+        Set<Long> existing = query().select("id").in("id", ids).list().stream()
+                .map(SeckillProductOrder::getId)
+                .collect(Collectors.toSet());
+        Map<Long, SeckillProductOrder> newOrders = new LinkedHashMap<>();
+        for (SeckillProductOrder order : orders) {
+            if (!existing.contains(order.getId())) {
+                newOrders.putIfAbsent(order.getId(), order);
+            }
+        }
+        if (newOrders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SeckillProductOrder> result = new ArrayList<>(newOrders.values());
+        // 多行插入订单
+        getBaseMapper().insertBatch(result);
+        // 按商品聚合扣减库存
+        Map<Long, Long> counts = result.stream()
+                .collect(Collectors.groupingBy(SeckillProductOrder::getSeckillProductId, Collectors.counting()));
+        counts.forEach((productId, count) -> {
+            boolean isSuccess = seckillProductService.update()
+                    .setSql("stock = stock - " + count)
+                    .ge("stock", count)
+                    .eq("id", productId)
+                    .update();
+            if (!isSuccess) {
+                // 数据库库存少于redis已售出的数量（库存被后台修改等），扣减至0并记录差额，订单照常落库
+                SeckillProduct product = seckillProductService.getById(productId);
+                long stock = product == null || product.getStock() == null ? 0 : product.getStock();
+                seckillProductService.update()
+                        .setSql("stock = GREATEST(stock - " + count + ", 0)")
+                        .eq("id", productId)
+                        .update();
+                log.error("数据库库存不足，已扣减至0，productId: {}, 需扣减: {}, 剩余: {}, 差额: {}",
+                        productId, count, stock, count - stock);
+            }
+        });
+        return result;
+    }
+
+    // 批量取消超时未支付订单（同一事务）
+    @Override
+    @Transactional
+    public List<SeckillProductOrder> cancelTimeoutOrders(Collection<Long> orderIds) {
+        // 锁定仍未支付的订单
+        List<SeckillProductOrder> orders = query()
+                .select("id", "user_id", "seckill_product_id")
+                .in("id", orderIds)
+                .eq("status", 0)
+                .last("for update")
+                .list();
+        if (orders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 一次更新取消所有订单
+        update().setSql("status = 2")
+                .set("cancel_time", LocalDateTime.now())
+                .in("id", orders.stream().map(SeckillProductOrder::getId).toList())
+                .eq("status", 0)
+                .update();
+        // 按商品聚合归还库存
+        Map<Long, Long> counts = orders.stream()
+                .collect(Collectors.groupingBy(SeckillProductOrder::getSeckillProductId, Collectors.counting()));
+        counts.forEach((productId, count) -> seckillProductService.update()
+                .setSql("stock = stock + " + count)
+                .eq("id", productId)
+                .update());
+        return orders;
+    }
 }
@@ -10,28 +10,57 @@ import com.flash_seckill.mapper.SeckillProductMapper;
 
 import com.flash_seckill.service.ISeckillProductService;
 import com.flash_seckill.utils.CacheUtil;
+import com.flash_seckill.utils.CatalogPageCache;
+import com.flash_seckill.utils.HeatUtil;
+import com.flash_seckill.utils.MemberStorage;
+import com.flash_seckill.utils.RankSnapshot;
+import com.flash_seckill.utils.StockStreamHub;
+import com.flash_seckill.utils.StockUtil;
 import com.flash_seckill.pojo.vo.ProductDetailVO;
 import com.flash_seckill.pojo.vo.ProductListVO;
 import com.flash_seckill.pojo.vo.RankVO;
-import java.util.ArrayList;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import static com.flash_seckill.constants.RedisConstants.*;
 
 @Service
 public class SeckillProductServiceImpl extends ServiceImpl<SeckillProductMapper, SeckillProduct> implements ISeckillProductService {
 
+    // 批量导入收藏时每次lua调用的用户数
+    private static final int COLLECT_IMPORT_BATCH_SIZE = 1000;
+
     @Autowired
     private CacheUtil cacheUtil;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private StockUtil stockUtil;
+    @Autowired
+    private HeatUtil heatUtil;
+    @Autowired
+    private RankSnapshot rankSnapshot;
+    @Autowired
+    private MemberStorage memberStorage;
+    @Autowired
+    private CatalogPageCache catalogPageCache;
+    @Autowired
+    private StockStreamHub stockStreamHub;
+
+    // 允许的最大用户id
+    @Value("${seckill.member.max-user-id:100000000}")
+    private long maxUserId;
+    // 单次批量导入收藏的最大用户数
+    @Value("${seckill.member.import-max-size:100000}")
+    private int importMaxSize;
 
     // 添加秒杀商品
     @Override
@@ -40,65 +69,77 @@ public class SeckillProductServiceImpl extends ServiceImpl<SeckillProductMapper,
         SeckillProduct seckillProduct = BeanUtil.copyProperties(seckillProductDTO, SeckillProduct.class);
         save(seckillProduct);
         // 添加商品库存至redis
-        stringRedisTemplate.opsForValue().set(PRODUCT_STOCK_KEY + seckillProduct.getId(),String.valueOf(seckillProduct.getStock()));
+        stockUtil.initStock(seckillProduct.getId(), seckillProduct.getStock());
     }
 
     // 收藏商品
     @Override
     public void collect(Long id) {
         // 检查商品是否存在
-        SeckillProduct seckillProduct = getById(id);
+        SeckillProduct seckillProduct = getCachedProduct(id);
         if (seckillProduct == null) {
             throw new BusinessException(ErrorCode.PRODUCT_NOT_FOUND);
         }
         Long userId = (Long) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        // 检查用户是否已收藏
-        if (stringRedisTemplate.opsForSet().isMember(PRODUCT_COLLECT_KEY + id, String.valueOf(userId))) {
+        // 添加收藏者到收藏集合（一次lua调用），已收藏时不会重复计数
+        long added = memberStorage.collect(stringRedisTemplate, memberStorage.collectorKey(id),
+                List.of(memberStorage.member(userId, 1)));
+        if (added == 0) {
             throw new BusinessException(ErrorCode.BUSINESS_ERROR, "已收藏该商品");
         }
         // 增加收藏数
-        stringRedisTemplate.opsForValue().increment(PRODUCT_HEAT_KEY + id + ":collectCount", 1);
-        // 添加收藏者id到收藏集合
-        stringRedisTemplate.opsForSet().add(PRODUCT_COLLECT_KEY + id, String.valueOf(userId));
+        heatUtil.incrementCollect(id);
     }
 
-    // 查询秒杀商品排行榜（前15名）
+    // 批量导入收藏，返回新收藏的用户数
     @Override
-    public List<RankVO> getProductRank() {
-        // 从Redis有序集合中获取排行榜前15名（按热度值降序排列）
-        Set<String> rankSet = stringRedisTemplate.opsForZSet().reverseRange(RANK_ALL_KEY, 0, 14);
-        
-        if (rankSet == null || rankSet.isEmpty()) {
-            return new ArrayList<>();
+    public long importCollects(Long id, List<Long> userIds) {
+        // 检查导入数量和用户id范围（bitmap下过大的id会分配超大位图）
+        if (userIds == null || userIds.size() > importMaxSize) {
+            throw new BusinessException(ErrorCode.PARAM_ERROR);
         }
-        
-        // 转换为RankVO列表
-        List<RankVO> rankList = new ArrayList<>();
-        int rank = 1;
-        
-        for (String productIdStr : rankSet) {
-            Long productId = Long.parseLong(productIdStr);
-            
-            // 从缓存或数据库中获取商品详情
-            SeckillProduct product = cacheUtil.getProduct(CACHE_PRODUCT_KEY, productId, SeckillProduct.class, this::getById);
-            
-            if (product != null) {
-                RankVO rankVO = new RankVO();
-                rankVO.setName(product.getName());
-                rankVO.setImg(product.getImg());
-                rankVO.setPrice(product.getPrice());
-                rankVO.setStock(product.getStock());
-                
-                // 从Redis有序集合中获取热度值
-                Double heatValue = stringRedisTemplate.opsForZSet().score(RANK_ALL_KEY, productIdStr);
-                rankVO.setHeatValue(heatValue != null ? heatValue.intValue() : 0);
-                rankVO.setRank(rank++);
-                
-                rankList.add(rankVO);
+        for (Long userId : userIds) {
+            if (userId == null || userId <= 0 || userId > maxUserId) {
+                throw new BusinessException(ErrorCode.PARAM_ERROR);
             }
         }
-        
-        return rankList;
+        // 检查商品是否存在
+        SeckillProduct seckillProduct = getCachedProduct(id);
+        if (seckillProduct == null) {
+            throw new BusinessException(ErrorCode.PRODUCT_NOT_FOUND);
+        }
+        String collectorKey = memberStorage.collectorKey(id);
+        long added = 0;
+        for (int i = 0; i < userIds.size(); i += COLLECT_IMPORT_BATCH_SIZE) {
+            List<String> members = userIds.subList(i, Math.min(i + COLLECT_IMPORT_BATCH_SIZE, userIds.size())).stream()
+                    .map(userId -> memberStorage.member(userId, 1))
+                    .toList();
+            added += memberStorage.collect(stringRedisTemplate, collectorKey, members);
+        }
+        if (added > 0) {
+            heatUtil.incrementCollect(id, added);
+        }
+        return added;
+    }
+
+    // 查询秒杀商品排行榜（前15名），直接返回本节点内存中的排行榜快照
+    @Override
+    public List<RankVO> getProductRank() {
+        return rankSnapshot.getRanks();
+    }
+
+    // 订阅商品实时库存
+    @Override
+    public SseEmitter streamStock(Long id) {
+        // 检查商品是否存在
+        if (getCachedProduct(id) == null) {
+            throw new BusinessException(ErrorCode.PRODUCT_NOT_FOUND);
+        }
+        SseEmitter emitter = stockStreamHub.subscribe(id);
+        if (emitter == null) {
+            throw new BusinessException(ErrorCode.BUSINESS_ERROR, "订阅人数已满，请稍后重试");
+        }
+        return emitter;
     }
 
     // 修改秒杀商品
@@ -121,24 +162,15 @@ public class SeckillProductServiceImpl extends ServiceImpl<SeckillProductMapper,
         }
     }
 
-    // 游标查询秒杀商品
+    // 游标查询秒杀商品（分页来自节点本地缓存，库存用redis中的实时库存覆盖）
     @Override
     public List<ProductListVO> getProductsByCursor(Long lastId, int size) {
-        // 构建查询条件
-        List<SeckillProduct> products;
-        if (lastId == null || lastId == 0) {
-            // 第一次查询，获取最新的size条记录
-            products = query().orderByDesc("id")
-                    .last("LIMIT " + size)
-                    .list();
-        } else {
-            // 游标查询，获取id小于lastId的size条记录
-            products = query().lt("id", lastId)
-                    .orderByDesc("id")
-                    .last("LIMIT " + size)
-                    .list();
+        List<SeckillProduct> products = catalogPageCache.getPage(lastId, size);
+        if (products.isEmpty()) {
+            return List.of();
         }
-        
+        Map<Long, Long> stocks = stockUtil.getStocks(products.stream().map(SeckillProduct::getId).toList());
+
         // 转换为VO列表
         return products.stream().map(product -> {
             ProductListVO vo = new ProductListVO();
@@ -146,7 +178,8 @@ public class SeckillProductServiceImpl extends ServiceImpl<SeckillProductMapper,
             vo.setName(product.getName());
             vo.setImg(product.getImg());
             vo.setPrice(product.getPrice());
-            vo.setStock(product.getStock());
+            Long stock = stocks.get(product.getId());
+            vo.setStock(stock == null ? product.getStock() : stock.intValue());
             return vo;
         }).toList();
     }
@@ -155,13 +188,19 @@ public class SeckillProductServiceImpl extends ServiceImpl<SeckillProductMapper,
     @Override
     public ProductDetailVO queryById(Long id) {
         // 从缓存中查询商品数据
-        SeckillProduct seckillProduct = cacheUtil.getProduct(CACHE_PRODUCT_KEY, id, SeckillProduct.class,this::getById);
+        SeckillProduct seckillProduct = getCachedProduct(id);
         if (seckillProduct == null){
             throw new BusinessException(ErrorCode.PRODUCT_NOT_FOUND);
         }
         // 添加点击数
-        stringRedisTemplate.opsForValue().increment(PRODUCT_HEAT_KEY + id + ":clickCount", 1);
+        heatUtil.incrementClick(id);
 
         return BeanUtil.copyProperties(seckillProduct, ProductDetailVO.class);
     }
+
+    // 从多级缓存中查询商品（本地缓存 -> redis -> 数据库）
+    @Override
+    public SeckillProduct getCachedProduct(Long id) {
+        return cacheUtil.getProduct(CACHE_PRODUCT_KEY, id, SeckillProduct.class, this::getById);
+    }
 }
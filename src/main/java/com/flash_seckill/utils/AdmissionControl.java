@@ -0,0 +1,174 @@
+package com.flash_seckill.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.flash_seckill.constants.RedisConstants.ADMISSION_BUDGET_KEY;
+
+/**
+ * 秒杀请求准入控制
+ * 第一级：节点本地按用户、按IP的令牌桶（GCRA，每个key一个AtomicLong，CAS无锁）；
+ * 第二级：每个商品在redis中的准入预算，每个窗口重置为 剩余库存 * 倍数，各节点按块租用到本地后无锁扣减，
+ * 预算用完的商品在重试间隔内直接拒绝，redis和MQ的压力与库存成正比而不是与请求数成正比
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    // 租用预算脚本
+    private static final DefaultRedisScript<Long> ADMISSION_LEASE_SCRIPT;
+
+    // 初始化
+    static {
+        ADMISSION_LEASE_SCRIPT = new DefaultRedisScript<>();
+        ADMISSION_LEASE_SCRIPT.setLocation(new ClassPathResource("admission_lease.lua"));
+        ADMISSION_LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private StockUtil stockUtil;
+
+    // 预算为剩余库存的倍数
+    @Value("${seckill.admission.budget-multiple:5}")
+    private long budgetMultiple;
+    // 预算窗口（秒）
+    @Value("${seckill.admission.budget-window-seconds:10}")
+    private long budgetWindowSeconds;
+    // 每次租用的预算
+    @Value("${seckill.admission.lease-chunk:20}")
+    private long leaseChunk;
+    // 预算用完后重新租用的间隔（毫秒）
+    @Value("${seckill.admission.exhausted-retry-millis:100}")
+    private long exhaustedRetryMillis;
+
+    // 令牌桶：每个请求的间隔、允许的突发
+    private final long userIntervalNanos;
+    private final long userBurstNanos;
+    private final long ipIntervalNanos;
+    private final long ipBurstNanos;
+    // 各key的理论到达时间（纳秒），长时间未访问的key自动淘汰
+    private final Cache<Long, AtomicLong> userBuckets;
+    private final Cache<String, AtomicLong> ipBuckets;
+    // 各商品的本地预算
+    private final ConcurrentHashMap<Long, Budget> budgets = new ConcurrentHashMap<>();
+
+    public AdmissionControl(@Value("${seckill.admission.user-rate:2}") double userRate,
+                            @Value("${seckill.admission.user-burst:3}") int userBurst,
+                            @Value("${seckill.admission.ip-rate:20}") double ipRate,
+                            @Value("${seckill.admission.ip-burst:40}") int ipBurst,
+                            @Value("${seckill.admission.max-keys:100000}") long maxKeys) {
+        this.userIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / userRate);
+        this.userBurstNanos = userIntervalNanos * (userBurst - 1);
+        this.ipIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ipRate);
+        this.ipBurstNanos = ipIntervalNanos * (ipBurst - 1);
+        this.userBuckets = CacheBuilder.newBuilder().maximumSize(maxKeys).expireAfterAccess(1, TimeUnit.MINUTES).build();
+        this.ipBuckets = CacheBuilder.newBuilder().maximumSize(maxKeys).expireAfterAccess(1, TimeUnit.MINUTES).build();
+    }
+
+    // 用户令牌桶
+    public boolean tryAcquireUser(Long userId) {
+        return tryAcquire(userBuckets.asMap().computeIfAbsent(userId, k -> new AtomicLong(Long.MIN_VALUE)),
+                userIntervalNanos, userBurstNanos);
+    }
+
+    // IP令牌桶
+    public boolean tryAcquireIp(String ip) {
+        return tryAcquire(ipBuckets.asMap().computeIfAbsent(ip, k -> new AtomicLong(Long.MIN_VALUE)),
+                ipIntervalNanos, ipBurstNanos);
+    }
+
+    // 商品准入预算：本地有预算时无锁扣减，用完后向redis租用下一块
+    public boolean tryAcquireBudget(Long productId) {
+        Budget budget = budgets.computeIfAbsent(productId, id -> new Budget());
+        while (true) {
+            if (budget.take()) {
+                return true;
+            }
+            if (System.currentTimeMillis() < budget.exhaustedUntil) {
+                return false;
+            }
+            synchronized (budget) {
+                // 其他线程已租到
+                if (budget.permits.get() > 0) {
+                    continue;
+                }
+                if (System.currentTimeMillis() < budget.exhaustedUntil) {
+                    return false;
+                }
+                long leased = lease(productId);
+                if (leased <= 0) {
+                    budget.exhaustedUntil = System.currentTimeMillis() + exhaustedRetryMillis;
+                    return false;
+                }
+                // 本次请求直接使用一个
+                budget.permits.addAndGet(leased - 1);
+                return true;
+            }
+        }
+    }
+
+    private long lease(Long productId) {
+        try {
+            // 新窗口的剩余库存在脚本中读取，一次往返完成租用
+            List<String> keys = new ArrayList<>();
+            keys.add(ADMISSION_BUDGET_KEY + productId);
+            keys.addAll(stockUtil.stockKeys(productId));
+            Long leased = stringRedisTemplate.execute(ADMISSION_LEASE_SCRIPT, keys,
+                    String.valueOf(budgetMultiple), String.valueOf(leaseChunk), String.valueOf(budgetWindowSeconds));
+            return leased == null ? 0 : leased;
+        } catch (Exception e) {
+            // 租用失败时放行，由秒杀脚本兜底
+            log.warn("租用准入预算失败: {}", productId, e);
+            return leaseChunk;
+        }
+    }
+
+    // GCRA：理论到达时间超过当前时间的部分不超过允许的突发时放行
+    private boolean tryAcquire(AtomicLong tat, long intervalNanos, long burstNanos) {
+        long now = System.nanoTime();
+        while (true) {
+            long current = tat.get();
+            long base = Math.max(current, now);
+            if (base - now > burstNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, base + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private static class Budget {
+        // 本地剩余预算
+        private final AtomicLong permits = new AtomicLong();
+        // 预算用完时，在此时间前不再租用
+        private volatile long exhaustedUntil;
+
+        private boolean take() {
+            while (true) {
+                long current = permits.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (permits.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -1,37 +1,115 @@
 package com.flash_seckill.utils;
 
+import cn.hutool.core.lang.ParameterizedTypeImpl;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.flash_seckill.mapper.SeckillProductMapper;
 import com.flash_seckill.pojo.entity.SeckillProduct;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+import static com.flash_seckill.constants.RedisConstants.CACHE_INVALIDATE_CHANNEL;
 import static com.flash_seckill.constants.RedisConstants.CACHE_NULL_TTL;
 import static com.flash_seckill.constants.RedisConstants.CACHE_PRODUCT_KEY;
+import static com.flash_seckill.constants.RedisConstants.LOCK_CACHE_KEY;
 
 @Slf4j
 @Component
-public class CacheUtil {
+public class CacheUtil implements MessageListener {
 
+    // 标记逻辑过期脚本
+    private static final DefaultRedisScript<Long> CACHE_EXPIRE_SCRIPT;
+
+    // 初始化
+    static {
+        CACHE_EXPIRE_SCRIPT = new DefaultRedisScript<>();
+        CACHE_EXPIRE_SCRIPT.setLocation(new ClassPathResource("cache_expire.lua"));
+        CACHE_EXPIRE_SCRIPT.setResultType(Long.class);
+    }
 
     @Autowired
     private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private RedissonClient redissonClient;
+    // 商品过滤器（各节点共享）
+    @Autowired
+    private ProductFilter productFilter;
+
+    // 逻辑过期时间（秒），过期后继续返回旧数据，由一个后台任务重建
+    @Value("${seckill.cache.logical-ttl-seconds:1800}")
+    private long logicalTtlSeconds;
+    // 是否使用分布式锁保证多个节点只有一个重建缓存
+    @Value("${seckill.cache.rebuild-mutex:true}")
+    private boolean rebuildMutex;
+    // 未抢到分布式锁时等待其他节点重建的最长时间（毫秒）
+    @Value("${seckill.cache.rebuild-wait-millis:200}")
+    private long rebuildWaitMillis;
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheUtil(StringRedisTemplate stringRedisTemplate) {
+    // 本地缓存（L1），redis为二级缓存（L2）
+    private final Cache<String, Object> localCache;
+    // 本地缓存失效次数，读取redis或数据库期间有失效时不把读到的数据留在本地缓存
+    private final AtomicLong generation = new AtomicLong();
+    // 正在加载的key，同一节点每个key只有一个加载任务，其余请求等待其结果
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    // 正在后台重建的key
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    // 逻辑过期后的后台重建线程
+    private final ExecutorService rebuildExecutor = Executors.newFixedThreadPool(4, r -> {
+        Thread thread = new Thread(r, "cache-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CacheUtil(StringRedisTemplate stringRedisTemplate,
+                     @Value("${seckill.cache.local-max-size:10000}") long localMaxSize,
+                     @Value("${seckill.cache.local-ttl-seconds:30}") long localTtlSeconds) {
         this.stringRedisTemplate = stringRedisTemplate;
+        // 按容量和写入时间淘汰，过期时间兜底广播丢失的情况
+        this.localCache = CacheBuilder.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    // 订阅缓存失效频道
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
     }
 
     // 设置缓存
@@ -39,22 +117,39 @@ public class CacheUtil {
         stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
     }
 
+    // 写入带逻辑过期时间的缓存（redis中不设置过期时间）
+    public void setWithLogicalExpire(String key, Object value) {
+        RedisData<Object> redisData = new RedisData<>(System.currentTimeMillis() + logicalTtlSeconds * 1000, value);
+        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+    }
+
     // 从缓存中查询数据
     public <T> T getProduct(String keyPrefix, Long id, Class<T> type,
                           Function<Long, T> dbFallback) {
-        // 布隆过滤 判断查询是否为已有商品
-        if (!bloomFilter.mightContain(id)) {
+        // 过滤器判断查询是否为已有商品
+        if (!productFilter.mightContain(id)) {
             return null;
         }
-        // 从Redis中查询商品数据
         String key = keyPrefix + id;
+        // 从本地缓存中查询商品数据
+        Object local = localCache.getIfPresent(key);
+        if (local != null) {
+            return type.cast(local);
+        }
+        // 从Redis中查询商品数据
+        long gen = generation.get();
         String jsonStr = stringRedisTemplate.opsForValue().get(key);
-
-        T t = null;
         // 判断缓存是否命中
         if (StrUtil.isNotBlank(jsonStr)) {
-            // 缓存命中，直接返回店铺数据
-            t = JSONUtil.toBean(jsonStr, type);
+            RedisData<T> redisData = parse(jsonStr, type);
+            T t = redisData.getData();
+            if (redisData.getExpireTime() > System.currentTimeMillis()) {
+                // 未过期，直接返回商品数据
+                putLocal(key, t, gen);
+            } else {
+                // 已逻辑过期，返回旧数据并后台重建（旧数据不放入本地缓存，重建完成后即可读到新数据）
+                refreshAsync(key, id, dbFallback);
+            }
             return t;
         }
         // jsonStr 为 null 或者 ""
@@ -62,51 +157,184 @@ public class CacheUtil {
             // 当前数据是""（说明该数据是之前缓存的空对象），直接返回失败信息
             return null;
         }
-        // 当前数据是null，则从数据库中查询店铺数据
-        t = dbFallback.apply(id);
+        // 当前数据是null，同一个key只由一个线程查询数据库，其余线程等待结果
+        return type.cast(loadOnce(key, () -> rebuild(key, id, type, dbFallback)));
+    }
+
+    // 同一节点内合并对同一个key的加载
+    private Object loadOnce(String key, Supplier<Object> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            Object value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    // 后台重建已逻辑过期的缓存，已有重建任务时直接返回
+    private <T> void refreshAsync(String key, Long id, Function<Long, T> dbFallback) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                refresh(key, id, dbFallback);
+            } catch (Exception e) {
+                log.error("重建商品缓存失败: {}", key, e);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    // 缓存未命中：抢到锁的节点查询数据库并写入缓存，其他节点等待重建结果，超时后直接查询数据库
+    private <T> T rebuild(String key, Long id, Class<T> type, Function<Long, T> dbFallback) {
+        if (!rebuildMutex) {
+            return load(key, id, dbFallback);
+        }
+        RLock lock = redissonClient.getLock(LOCK_CACHE_KEY + key);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(0, 10, TimeUnit.SECONDS);
+            if (locked) {
+                // 双重检查，其他节点可能已经重建完成
+                String jsonStr = stringRedisTemplate.opsForValue().get(key);
+                if (jsonStr != null) {
+                    return jsonStr.isEmpty() ? null : parse(jsonStr, type).getData();
+                }
+                return load(key, id, dbFallback);
+            }
+            long deadline = System.currentTimeMillis() + rebuildWaitMillis;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                String jsonStr = stringRedisTemplate.opsForValue().get(key);
+                if (jsonStr != null) {
+                    return jsonStr.isEmpty() ? null : parse(jsonStr, type).getData();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+        // 等待超时，直接查询数据库（不写缓存）
+        return dbFallback.apply(id);
+    }
+
+    // 逻辑过期：抢到锁的节点重建，未抢到说明其他节点正在重建，跳过
+    private <T> void refresh(String key, Long id, Function<Long, T> dbFallback) {
+        if (!rebuildMutex) {
+            load(key, id, dbFallback);
+            return;
+        }
+        RLock lock = redissonClient.getLock(LOCK_CACHE_KEY + key);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            load(key, id, dbFallback);
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    // 查询数据库并写入缓存
+    private <T> T load(String key, Long id, Function<Long, T> dbFallback) {
+        long gen = generation.get();
+        T t = dbFallback.apply(id);
         // 判断数据库是否存在商品
         if (Objects.isNull(t)) {
             // 数据库中不存在，缓存空对象（解决缓存穿透），返回失败信息
             this.set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            localCache.invalidate(key);
             return null;
         }
         // 数据库中存在，重建缓存，并返回秒杀商品数据
-        // 缓存永不过期
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(t));
+        setWithLogicalExpire(key, t);
+        putLocal(key, t, gen);
         return t;
     }
 
-    // 插入数据个数
-    private static int size = 10000;
-    // 期望错误率
-    private static double fpp = 0.01;
-    // 初始化布隆过滤器
-    private static BloomFilter<Long> bloomFilter = BloomFilter.create(Funnels.longFunnel(), size, fpp);
+    // 写入本地缓存，读取期间发生过失效时立即移除（先写入再检查，不会留下失效前读到的数据）
+    private void putLocal(String key, Object value, long gen) {
+        localCache.put(key, value);
+        if (generation.get() != gen) {
+            localCache.invalidate(key);
+        }
+    }
 
-    // 初始化布隆过滤器
-    @PostConstruct
-    public void initBloomFilter() {
-        // 获取所有seckillProduct的id到集合
-        Collection<Long> ids = seckillProductMapper.idList();
-        // 将所有有效ID添加到布隆过滤器
-        for (Long id : ids) {
-            log.info("初始化布隆过滤器，添加id：{}", id);
-            bloomFilter.put(id);
+    // 清除本地缓存并记录失效
+    private void invalidateLocal(String key) {
+        generation.incrementAndGet();
+        localCache.invalidate(key);
+    }
+
+    // 按 RedisData<type> 一次解析缓存数据，没有逻辑过期时间的旧格式视为已过期
+    private <T> RedisData<T> parse(String jsonStr, Class<T> type) {
+        RedisData<T> redisData = JSONUtil.toBean(jsonStr,
+                new ParameterizedTypeImpl(new Type[]{type}, null, RedisData.class), false);
+        if (redisData.getData() == null) {
+            return new RedisData<>(0L, JSONUtil.toBean(jsonStr, type));
+        }
+        if (redisData.getExpireTime() == null) {
+            redisData.setExpireTime(0L);
         }
+        return redisData;
+    }
+
+    // 标记缓存逻辑过期（lua只改写过期时间），并通知所有节点清除本地缓存（旧数据继续可读，下一次读取时后台重建）
+    public void expire(String keyPrefix, Long id) {
+        String key = keyPrefix + id;
+        stringRedisTemplate.execute(CACHE_EXPIRE_SCRIPT, List.of(key));
+        invalidateLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
     }
 
-    // 添加ID至布隆过滤器
-    public void addToBloomFilter(Long id) {
-        bloomFilter.put(id);
+    // 删除redis缓存，并通知所有节点清除本地缓存
+    public void invalidate(String keyPrefix, Long id) {
+        String key = keyPrefix + id;
+        stringRedisTemplate.delete(key);
+        invalidateLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    // 接收缓存失效广播，清除本地缓存
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        invalidateLocal(key);
+        log.debug("清除本地缓存: {}", key);
     }
 
     // 缓存预热
     public void preheat() {
-        Collection<Long> ids = seckillProductMapper.idList();
-        for (Long id : ids) {
-            SeckillProduct seckillProduct = seckillProductMapper.selectById(id);
-            stringRedisTemplate.opsForValue().set(CACHE_PRODUCT_KEY + id, JSONUtil.toJsonStr(seckillProduct));
-        }
+        preheat(seckillProductMapper.selectList(null));
+    }
+
+    // 批量写入商品缓存（一次pipeline）
+    public void preheat(Collection<SeckillProduct> products) {
+        long expireTime = System.currentTimeMillis() + logicalTtlSeconds * 1000;
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (SeckillProduct product : products) {
+                    operations.opsForValue().set(CACHE_PRODUCT_KEY + product.getId(),
+                            JSONUtil.toJsonStr(new RedisData<>(expireTime, product)));
+                }
+                return null;
+            }
+        });
     }
 }
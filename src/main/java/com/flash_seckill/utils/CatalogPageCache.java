@@ -0,0 +1,80 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.mapper.SeckillProductMapper;
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.flash_seckill.constants.RedisConstants.CATALOG_INVALIDATE_CHANNEL;
+
+/**
+ * 节点本地的商品列表分页缓存
+ * 按游标缓存只包含列表所需列的不可变分页，商品新增、删除或展示字段修改后广播清空所有节点的分页；
+ * 库存由调用方从redis覆盖，分页中的库存只在redis库存未加载时使用
+ */
+@Slf4j
+@Component
+public class CatalogPageCache implements MessageListener {
+
+    @Autowired
+    private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // key为 游标:条数
+    private final Cache<String, List<SeckillProduct>> pages;
+
+    public CatalogPageCache(@Value("${seckill.catalog.max-pages:1000}") long maxPages,
+                            @Value("${seckill.catalog.page-ttl-seconds:60}") long pageTtlSeconds) {
+        // 过期时间兜底广播丢失的情况
+        this.pages = CacheBuilder.newBuilder()
+                .maximumSize(maxPages)
+                .expireAfterWrite(pageTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    // 订阅分页失效频道
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CATALOG_INVALIDATE_CHANNEL));
+    }
+
+    // 查询id小于lastId的size条商品（lastId为空时从最新商品开始），同一页并发未命中时只查询一次数据库
+    public List<SeckillProduct> getPage(Long lastId, int size) {
+        long cursor = lastId == null || lastId == 0 ? Long.MAX_VALUE : lastId;
+        try {
+            return pages.get(cursor + ":" + size, () -> List.copyOf(seckillProductMapper.selectPageBefore(cursor, size)));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("查询商品分页失败", e.getCause());
+        }
+    }
+
+    // 清空所有节点的分页缓存
+    public void invalidateAll() {
+        pages.invalidateAll();
+        stringRedisTemplate.convertAndSend(CATALOG_INVALIDATE_CHANNEL, "ALL");
+    }
+
+    // 接收分页失效广播
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        pages.invalidateAll();
+        log.debug("清除本地商品分页缓存");
+    }
+}
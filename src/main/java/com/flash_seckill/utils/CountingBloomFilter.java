@@ -0,0 +1,177 @@
+package com.flash_seckill.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 计数布隆过滤器
+ * 每个位置为4位计数器（一个long存16个），支持删除；计数器达到15后不再增减，只会带来误判存在。
+ * 删除的id不一定真的加入过（增量丢失或本身就是误判存在），删除时计数器最少保留1，不会让共享位置的其他id误判不存在，
+ * 被删除的id可能继续误判存在，由调用方定期重建消除。
+ * 计数器通过CAS更新，读写均无锁；容量不足时由调用方按更大的容量重建
+ */
+public class CountingBloomFilter implements ProductFilter {
+
+    private static final int MAGIC = 0x43424632;
+    private static final int HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES * 4;
+    private static final long COUNTER_MAX = 0xF;
+
+    // 预期元素个数
+    private final long capacity;
+    // 计数器个数
+    private final int counterCount;
+    // 哈希函数个数
+    private final int hashCount;
+    // 构建时间（毫秒时间戳）
+    private final long createTime;
+    private final AtomicLongArray words;
+    // 当前元素个数（只统计加入前不存在的id，重复加入不计数）
+    private final AtomicLong size;
+    // 加入过的最大id（高水位），加载本地快照后只需补齐更大的id
+    private final AtomicLong maxId;
+
+    public CountingBloomFilter(long capacity, double fpp, long createTime) {
+        this.capacity = Math.max(capacity, 1);
+        long m = (long) Math.ceil(-this.capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.counterCount = (int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 15);
+        this.hashCount = Math.max(1, (int) Math.round((double) counterCount / this.capacity * Math.log(2)));
+        this.createTime = createTime;
+        this.words = new AtomicLongArray((counterCount + 15) >>> 4);
+        this.size = new AtomicLong();
+        this.maxId = new AtomicLong();
+    }
+
+    private CountingBloomFilter(long capacity, int counterCount, int hashCount, long createTime, long size, long maxId,
+                                long[] words) {
+        this.capacity = capacity;
+        this.counterCount = counterCount;
+        this.hashCount = hashCount;
+        this.createTime = createTime;
+        this.words = new AtomicLongArray(words);
+        this.size = new AtomicLong(size);
+        this.maxId = new AtomicLong(maxId);
+    }
+
+    @Override
+    public boolean mightContain(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int index = (int) Math.floorMod(h1 + i * h2, (long) counterCount);
+            if (counter(words.get(index >>> 4), index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void add(long id) {
+        boolean present = mightContain(id);
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            update((int) Math.floorMod(h1 + i * h2, (long) counterCount), 1);
+        }
+        if (!present) {
+            size.incrementAndGet();
+        }
+        maxId.accumulateAndGet(id, Math::max);
+    }
+
+    @Override
+    public void remove(long id) {
+        // 不存在的id不能删除，否则会减掉其他id的计数
+        if (!mightContain(id)) {
+            return;
+        }
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            update((int) Math.floorMod(h1 + i * h2, (long) counterCount), -1);
+        }
+        size.decrementAndGet();
+    }
+
+    // 元素个数超过预期容量，误判率开始上升
+    public boolean isFull() {
+        return size.get() > capacity;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public long getMaxId() {
+        return maxId.get();
+    }
+
+    // 序列化：[魔数][容量][计数器个数][哈希函数个数][构建时间][元素个数][最大id][计数器...]
+    public byte[] toBytes() {
+        int length = words.length();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length * Long.BYTES);
+        buffer.putInt(MAGIC).putLong(capacity).putInt(counterCount).putInt(hashCount)
+                .putLong(createTime).putLong(size.get()).putLong(maxId.get());
+        for (int i = 0; i < length; i++) {
+            buffer.putLong(words.get(i));
+        }
+        return buffer.array();
+    }
+
+    public static CountingBloomFilter fromBytes(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    // 从缓冲区（可以是内存映射的文件）读取
+    public static CountingBloomFilter read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("无法识别的过滤器数据");
+        }
+        long capacity = buffer.getLong();
+        int counterCount = buffer.getInt();
+        int hashCount = buffer.getInt();
+        long createTime = buffer.getLong();
+        long size = buffer.getLong();
+        long maxId = buffer.getLong();
+        long[] words = new long[(counterCount + 15) >>> 4];
+        buffer.asLongBuffer().get(words);
+        return new CountingBloomFilter(capacity, counterCount, hashCount, createTime, size, maxId, words);
+    }
+
+    // 计数器加减，达到上限后保持不变，删除时最少保留1
+    private void update(int index, int delta) {
+        int word = index >>> 4;
+        int shift = (index & 15) << 2;
+        while (true) {
+            long value = words.get(word);
+            long count = (value >>> shift) & COUNTER_MAX;
+            if (count == COUNTER_MAX || (delta < 0 && count <= 1)) {
+                return;
+            }
+            long next = delta > 0 ? value + (1L << shift) : value - (1L << shift);
+            if (words.compareAndSet(word, value, next)) {
+                return;
+            }
+        }
+    }
+
+    private static long counter(long word, int index) {
+        return (word >>> ((index & 15) << 2)) & COUNTER_MAX;
+    }
+
+    // 64位哈希混淆（SplitMix64）
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -0,0 +1,260 @@
+package com.flash_seckill.utils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.flash_seckill.constants.RedisConstants.PRODUCT_HEAT_ACTIVE_KEY;
+import static com.flash_seckill.constants.RedisConstants.PRODUCT_HEAT_BUCKET_KEY;
+import static com.flash_seckill.constants.RedisConstants.PRODUCT_HEAT_KEY;
+import static com.flash_seckill.constants.RedisConstants.PRODUCT_HEAT_LEGACY_DIRTY_KEY;
+
+/**
+ * 商品热度计数
+ * 点击、收藏先累加到节点本地计数器，定时用一次pipeline把增量写入当前时间分桶 product:heat:bucket:{桶号}，
+ * 请求路径上不再访问redis；节点宕机最多丢失一个刷新周期内的计数。
+ * 已全部刷新且空闲一个刷新周期的计数器会被移除，本地计数器个数只与近期有访问的商品数相关。
+ * 分桶在滑动窗口之外自动过期，热度按分桶年龄指数衰减后求和，只反映近期的热度
+ */
+@Slf4j
+@Component
+public class HeatUtil {
+
+    // 收藏的热度权重
+    public static final int COLLECT_WEIGHT = 3;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 分桶时长（秒）
+    @Value("${seckill.heat.bucket-seconds:3600}")
+    private long bucketSeconds;
+    // 滑动窗口内的分桶数
+    @Value("${seckill.heat.window-buckets:24}")
+    private int windowBuckets;
+    // 热度衰减半衰期（秒）
+    @Value("${seckill.heat.half-life-seconds:21600}")
+    private long halfLifeSeconds;
+    // 每批读取热度的商品数
+    @Value("${seckill.heat.batch-size:500}")
+    private int batchSize;
+
+    // 各商品的本地计数
+    private final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    // 增加点击数
+    public void incrementClick(Long productId) {
+        add(productId, false, 1);
+    }
+
+    // 增加收藏数
+    public void incrementCollect(Long productId) {
+        incrementCollect(productId, 1);
+    }
+
+    // 批量增加收藏数
+    public void incrementCollect(Long productId, long count) {
+        add(productId, true, count);
+    }
+
+    // 累加到本地计数器；计数器正在或已经被移除时撤销本次累加，重新获取计数器后重试
+    private void add(Long productId, boolean collect, long count) {
+        while (true) {
+            Counter counter = counters.computeIfAbsent(productId, id -> new Counter());
+            LongAdder adder = collect ? counter.collects : counter.clicks;
+            adder.add(count);
+            if (!counter.retired) {
+                return;
+            }
+            adder.add(-count);
+        }
+    }
+
+    // 定时把本地增量刷新到当前分桶（一次pipeline）
+    @Scheduled(fixedDelayString = "${seckill.heat.flush-interval-millis:1000}")
+    public synchronized void flush() {
+        List<Delta> deltas = new ArrayList<>();
+        counters.forEach((productId, counter) -> {
+            // 计数器只增不减，用已刷新的值求增量，刷新过程中的并发累加留到下一轮
+            long clicks = counter.clicks.sum();
+            long collects = counter.collects.sum();
+            if (clicks != counter.flushedClicks || collects != counter.flushedCollects) {
+                counter.idle = false;
+                deltas.add(new Delta(productId, counter, clicks, collects));
+            } else if (!counter.idle) {
+                // 本轮没有新计数，标记空闲
+                counter.idle = true;
+            } else {
+                // 已全部刷新且空闲一个周期，移除：先标记退役再确认没有新计数，
+                // 标记后的累加会被写入方撤销并重试，确认有新计数时取消标记并保留
+                counters.computeIfPresent(productId, (id, current) -> {
+                    if (current != counter) {
+                        return current;
+                    }
+                    counter.retired = true;
+                    if (counter.clicks.sum() == counter.flushedClicks
+                            && counter.collects.sum() == counter.flushedCollects) {
+                        return null;
+                    }
+                    counter.retired = false;
+                    return counter;
+                });
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        long bucket = currentBucket();
+        String bucketKey = PRODUCT_HEAT_BUCKET_KEY + bucket;
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    for (Delta delta : deltas) {
+                        long heat = (delta.clicks - delta.counter.flushedClicks)
+                                + (delta.collects - delta.counter.flushedCollects) * COLLECT_WEIGHT;
+                        String productId = delta.productId.toString();
+                        operations.opsForHash().increment(bucketKey, productId, heat);
+                        operations.opsForZSet().add(PRODUCT_HEAT_ACTIVE_KEY, productId, bucket);
+                    }
+                    // 分桶滑出窗口后自动过期
+                    operations.expire(bucketKey, (windowBuckets + 1) * bucketSeconds, TimeUnit.SECONDS);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            // 未推进已刷新的值，下一轮重试
+            log.error("刷新商品热度失败", e);
+            return;
+        }
+        for (Delta delta : deltas) {
+            delta.counter.flushedClicks = delta.clicks;
+            delta.counter.flushedCollects = delta.collects;
+        }
+    }
+
+    // 停机前刷新剩余计数
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // 计算窗口内有热度的商品的衰减热度，窗口外的商品移出活跃集合
+    public Map<String, Double> decayedScores() {
+        long bucket = currentBucket();
+        long oldest = bucket - windowBuckets + 1;
+        stringRedisTemplate.opsForZSet().removeRangeByScore(PRODUCT_HEAT_ACTIVE_KEY, Double.NEGATIVE_INFINITY, oldest - 1);
+        Set<String> active = stringRedisTemplate.opsForZSet().range(PRODUCT_HEAT_ACTIVE_KEY, 0, -1);
+        Map<String, Double> scores = new HashMap<>();
+        if (active == null || active.isEmpty()) {
+            return scores;
+        }
+        // 各分桶的衰减系数，当前分桶为1
+        double[] decay = new double[windowBuckets];
+        for (int i = 0; i < windowBuckets; i++) {
+            decay[i] = Math.pow(0.5, (double) i * bucketSeconds / halfLifeSeconds);
+        }
+        List<Object> ids = new ArrayList<>(active);
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Object> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            // 每个分桶一次 HMGET 读取整批商品
+            List<Object> buckets = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    for (int i = 0; i < windowBuckets; i++) {
+                        operations.opsForHash().multiGet(PRODUCT_HEAT_BUCKET_KEY + (bucket - i), batch);
+                    }
+                    return null;
+                }
+            });
+            for (int j = 0; j < batch.size(); j++) {
+                double score = 0;
+                for (int i = 0; i < windowBuckets; i++) {
+                    Object value = ((List<?>) buckets.get(i)).get(j);
+                    if (value != null) {
+                        score += Long.parseLong(value.toString()) * decay[i];
+                    }
+                }
+                if (score > 0) {
+                    scores.put((String) batch.get(j), score);
+                }
+            }
+        }
+        return scores;
+    }
+
+    // 清理旧版热度计数key：SCAN 逐批遍历 product:heat:*，UNLINK 各商品的 clickCount/collectCount 计数和 dirty set，返回清理的key数
+    public int cleanupLegacyKeys() {
+        int removed = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(PRODUCT_HEAT_KEY + "*").count(batchSize).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            List<String> keys = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                if (key.endsWith(":clickCount") || key.endsWith(":collectCount") || key.equals(PRODUCT_HEAT_LEGACY_DIRTY_KEY)) {
+                    keys.add(key);
+                }
+                if (keys.size() >= batchSize) {
+                    stringRedisTemplate.unlink(keys);
+                    removed += keys.size();
+                    keys.clear();
+                }
+            }
+            if (!keys.isEmpty()) {
+                stringRedisTemplate.unlink(keys);
+                removed += keys.size();
+            }
+        }
+        return removed;
+    }
+
+    private long currentBucket() {
+        return System.currentTimeMillis() / 1000 / bucketSeconds;
+    }
+
+    private static class Counter {
+        private final LongAdder clicks = new LongAdder();
+        private final LongAdder collects = new LongAdder();
+        // 已刷新到redis的值，只在flush中读写
+        private long flushedClicks;
+        private long flushedCollects;
+        // 上一轮刷新时没有新计数，只在flush中读写
+        private boolean idle;
+        // 已从map中移除（或正在移除），写入方看到后撤销累加并重试
+        private volatile boolean retired;
+    }
+
+    private static class Delta {
+        private final Long productId;
+        private final Counter counter;
+        // 本轮读到的累计值
+        private final long clicks;
+        private final long collects;
+
+        private Delta(Long productId, Counter counter, long clicks, long collects) {
+            this.productId = productId;
+            this.counter = counter;
+            this.clicks = clicks;
+            this.collects = collects;
+        }
+    }
+}
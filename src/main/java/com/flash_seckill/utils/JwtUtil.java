@@ -1,9 +1,12 @@
 package com.flash_seckill.utils;
 
 
+import com.flash_seckill.pojo.dto.JwtPrincipal;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -13,7 +16,6 @@ import org.springframework.stereotype.Component;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 
 @Component
@@ -25,9 +27,18 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private Long expiration; // 单位：秒，例如 3600
 
-    // 缓存 SecretKey（线程安全）
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // 缓存 SecretKey 和解析器（线程安全）
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        return signingKey;
     }
 
     // 生成 Token
@@ -48,61 +59,49 @@ public class JwtUtil {
 
     // 解析 Claims
     public Long getUserId(String token) {
-        return Long.parseLong(Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject());
+        return Long.parseLong(getClaims(token).getSubject());
     }
 
     public String getUsername(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .get("username", String.class);
+        return getClaims(token).get("username", String.class);
     }
 
 
     public Date getExpiration(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getExpiration();
+        return getClaims(token).getExpiration();
     }
 
     public Collection<? extends GrantedAuthority> getRole(String token) {
-        Object roles = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .get("role");
-        
+        return toAuthorities(getClaims(token).get("role"));
+    }
+
+    public Claims getClaims(String token) {
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    // 一次校验签名并解析出全部用户信息
+    public JwtPrincipal parse(String token) {
+        Claims claims = getClaims(token);
+        return new JwtPrincipal(
+                Long.parseLong(claims.getSubject()),
+                claims.get("username", String.class),
+                toAuthorities(claims.get("role")),
+                claims.getExpiration().getTime());
+    }
+
+    private List<GrantedAuthority> toAuthorities(Object roles) {
         if (roles instanceof List) {
             return ((List<?>) roles).stream()
-                    .map(role -> new SimpleGrantedAuthority(role.toString()))
-                    .collect(Collectors.toList());
+                    .map(role -> (GrantedAuthority) new SimpleGrantedAuthority(role.toString()))
+                    .toList();
         } else if (roles != null) {
             // 如果存入的是单个角色，转换为权限集合
-            return Collections.singletonList(new SimpleGrantedAuthority(roles.toString()));
+            return List.of(new SimpleGrantedAuthority(roles.toString()));
         } else {
-            return Collections.emptyList();
+            return List.of();
         }
     }
 
-    public Claims getClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-
     // 验证 Token
     public boolean validateToken(String token, UserDetails userDetails) {
         final String username = getUsername(token);
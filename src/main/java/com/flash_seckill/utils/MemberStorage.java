@@ -0,0 +1,99 @@
+package com.flash_seckill.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.flash_seckill.constants.RedisConstants.*;
+
+/**
+ * 商品下单用户、收藏用户的存储方式
+ * set：product:user:{id} / product:collect:{id} 中每个成员为用户id字符串；
+ * bitmap：product:buyers:{id} / product:collectors:{id} 中以用户id为位偏移，每个用户只占1位
+ * （分片模式下同一分片的用户id同余，位偏移为 用户id / 分片数）。用户id为数据库自增id，位图大小与最大用户id成正比
+ */
+@Component
+public class MemberStorage {
+
+    // 存储方式
+    public static final String MODE_SET = "set";
+    public static final String MODE_BITMAP = "bitmap";
+
+    // 收藏脚本
+    private static final DefaultRedisScript<Long> COLLECT_SCRIPT;
+
+    // 初始化
+    static {
+        COLLECT_SCRIPT = new DefaultRedisScript<>();
+        COLLECT_SCRIPT.setLocation(new ClassPathResource("collect.lua"));
+        COLLECT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final boolean bitmap;
+
+    public MemberStorage(@Value("${seckill.member.storage:set}") String mode) {
+        this.bitmap = MODE_BITMAP.equalsIgnoreCase(mode);
+    }
+
+    public boolean isBitmap() {
+        return bitmap;
+    }
+
+    // 传给lua脚本的存储方式
+    public String mode() {
+        return bitmap ? MODE_BITMAP : MODE_SET;
+    }
+
+    // 下单用户分片key
+    public String buyerKey(Long productId, int shard, int shardTotal) {
+        String prefix = bitmap ? PRODUCT_BUYER_BITMAP_KEY : PRODUCT_USER_KEY;
+        return shardTotal <= 1 ? prefix + productId : prefix + "{" + productId + ":" + shard + "}";
+    }
+
+    // 收藏用户key
+    public String collectorKey(Long productId) {
+        return (bitmap ? PRODUCT_COLLECTOR_BITMAP_KEY : PRODUCT_COLLECT_KEY) + productId;
+    }
+
+    // 用户在key中的成员：set为用户id，bitmap为位偏移
+    public String member(Long userId, int shardTotal) {
+        return String.valueOf(bitmap ? Math.floorDiv(userId, (long) Math.max(1, shardTotal)) : userId);
+    }
+
+    // 添加，新添加返回true
+    public boolean add(StringRedisTemplate template, String key, String member) {
+        if (bitmap) {
+            return !Boolean.TRUE.equals(template.opsForValue().setBit(key, Long.parseLong(member), true));
+        }
+        Long added = template.opsForSet().add(key, member);
+        return added != null && added > 0;
+    }
+
+    // 批量收藏（一次lua调用），返回新收藏的用户数
+    public long collect(StringRedisTemplate template, String collectorKey, Collection<String> members) {
+        List<String> args = new ArrayList<>(members.size() + 1);
+        args.add(mode());
+        args.addAll(members);
+        Long added = template.execute(COLLECT_SCRIPT, List.of(collectorKey), args.toArray());
+        return added == null ? 0 : added;
+    }
+
+    // 移除（可在pipeline中调用）
+    @SuppressWarnings("unchecked")
+    public void remove(RedisOperations operations, String key, Collection<String> members) {
+        if (bitmap) {
+            for (String member : members) {
+                operations.opsForValue().setBit(key, Long.parseLong(member), false);
+            }
+        } else {
+            operations.opsForSet().remove(key, members.toArray());
+        }
+    }
+}
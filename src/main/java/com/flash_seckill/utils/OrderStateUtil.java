@@ -0,0 +1,176 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.pojo.entity.SeckillProductOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.flash_seckill.constants.RedisConstants.ORDER_STATE_KEY;
+
+/**
+ * redis中的订单状态
+ * 下单时写入 order:state:{orderId}（含下单时的商品快照），支付、超时取消在redis中通过lua原子切换状态，
+ * 数据库由消息异步对齐；订单消息尚未落库时也可以正常支付和查询
+ */
+@Component
+public class OrderStateUtil {
+
+    // 支付结果
+    public static final int PAY_SUCCESS = 0;
+    public static final int PAY_NOT_FOUND = 1;
+    public static final int PAY_PERMISSION_DENIED = 2;
+    public static final int PAY_STATUS_ERROR = 3;
+
+    // 取消结果
+    public static final int CANCEL_PAID = 0;
+    public static final int CANCEL_SUCCESS = 1;
+    public static final int CANCEL_NOT_FOUND = 2;
+    public static final int CANCEL_ALREADY = 3;
+
+    // 支付脚本
+    private static final DefaultRedisScript<Long> ORDER_PAY_SCRIPT;
+    // 取消脚本
+    private static final DefaultRedisScript<Long> ORDER_CANCEL_SCRIPT;
+
+    // 初始化
+    static {
+        ORDER_PAY_SCRIPT = new DefaultRedisScript<>();
+        ORDER_PAY_SCRIPT.setLocation(new ClassPathResource("order_pay.lua"));
+        ORDER_PAY_SCRIPT.setResultType(Long.class);
+        ORDER_CANCEL_SCRIPT = new DefaultRedisScript<>();
+        ORDER_CANCEL_SCRIPT.setLocation(new ClassPathResource("order_cancel.lua"));
+        ORDER_CANCEL_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 订单状态保留时间（秒），过期后以数据库为准
+    @Value("${seckill.order.state-ttl-seconds:86400}")
+    private long stateTtlSeconds;
+
+    // 写入订单状态（一次pipeline）
+    public void save(SeckillProductOrder order) {
+        Map<String, String> state = new HashMap<>();
+        state.put("userId", order.getUserId().toString());
+        state.put("productId", order.getSeckillProductId().toString());
+        state.put("status", order.getStatus().toString());
+        state.put("createTime", String.valueOf(toMillis(order.getCreateTime())));
+        if (order.getProductName() != null) {
+            state.put("productName", order.getProductName());
+            state.put("productImg", order.getProductImg() == null ? "" : order.getProductImg());
+            state.put("productPrice", String.valueOf(order.getProductPrice()));
+        }
+        String key = ORDER_STATE_KEY + order.getId();
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().putAll(key, state);
+                operations.expire(key, stateTtlSeconds, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+    }
+
+    // 查询订单状态，不存在返回null
+    public SeckillProductOrder get(Long orderId) {
+        Map<Object, Object> state = stringRedisTemplate.opsForHash().entries(ORDER_STATE_KEY + orderId);
+        if (state.isEmpty()) {
+            return null;
+        }
+        SeckillProductOrder order = new SeckillProductOrder();
+        order.setId(orderId);
+        order.setUserId(Long.valueOf((String) state.get("userId")));
+        order.setSeckillProductId(Long.valueOf((String) state.get("productId")));
+        order.setStatus(Integer.valueOf((String) state.get("status")));
+        order.setCreateTime(toTime((String) state.get("createTime")));
+        order.setPayTime(toTime((String) state.get("payTime")));
+        order.setCancelTime(toTime((String) state.get("cancelTime")));
+        order.setProductName((String) state.get("productName"));
+        order.setProductImg((String) state.get("productImg"));
+        String price = (String) state.get("productPrice");
+        order.setProductPrice(price == null || "null".equals(price) ? null : Integer.valueOf(price));
+        return order;
+    }
+
+    // 支付：0-成功 1-状态不存在 2-非本人订单 3-订单状态错误
+    public int pay(Long orderId, Long userId, LocalDateTime payTime) {
+        Long result = stringRedisTemplate.execute(ORDER_PAY_SCRIPT,
+                List.of(ORDER_STATE_KEY + orderId),
+                userId.toString(),
+                String.valueOf(toMillis(payTime)));
+        return result.intValue();
+    }
+
+    // 批量取消未支付订单：0-已支付 1-取消成功 2-状态不存在 3-已取消
+    // 各订单key位于不同slot，每个订单单独执行脚本，整批放在一次pipeline中
+    public Map<Long, Integer> cancel(Collection<Long> orderIds, LocalDateTime cancelTime) {
+        List<Long> ids = new ArrayList<>(orderIds);
+        byte[] script = ORDER_CANCEL_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] time = String.valueOf(toMillis(cancelTime)).getBytes(StandardCharsets.UTF_8);
+        List<Object> result = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1,
+                        (ORDER_STATE_KEY + id).getBytes(StandardCharsets.UTF_8), time);
+            }
+            return null;
+        });
+        Map<Long, Integer> states = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            states.put(ids.get(i), ((Number) result.get(i)).intValue());
+        }
+        return states;
+    }
+
+    // 用redis中的最新状态覆盖待落库的订单（支付可能早于订单落库）
+    public void overlay(List<SeckillProductOrder> orders) {
+        List<Object> states = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (SeckillProductOrder order : orders) {
+                    operations.opsForHash().multiGet(ORDER_STATE_KEY + order.getId(), List.of("status", "payTime", "cancelTime"));
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < orders.size(); i++) {
+            List<?> state = (List<?>) states.get(i);
+            if (state == null || state.get(0) == null) {
+                continue;
+            }
+            SeckillProductOrder order = orders.get(i);
+            order.setStatus(Integer.valueOf((String) state.get(0)));
+            order.setPayTime(toTime((String) state.get(1)));
+            order.setCancelTime(toTime((String) state.get(2)));
+        }
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime toTime(String millis) {
+        return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(millis)), ZoneId.systemDefault());
+    }
+}
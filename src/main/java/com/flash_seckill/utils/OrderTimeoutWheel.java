@@ -0,0 +1,170 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.pojo.entity.SeckillProductOrder;
+import com.flash_seckill.service.ISeckillProductOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.flash_seckill.constants.RedisConstants.*;
+
+/**
+ * 订单超时时间轮
+ * 订单按到期秒数放入 order:timeout:bucket:{秒}，到期秒数记录在有序集合 order:timeout:wheel 中；
+ * 由抢到锁的节点每秒取出到期分桶，批量取消未支付订单并按商品聚合归还数据库和redis库存；
+ * 数据库取消提交前先把订单id记入 order:restore:pending，redis库存归还后再移除，中断时下次处理前重放
+ */
+@Slf4j
+@Component
+public class OrderTimeoutWheel {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedissonClient redissonClient;
+    @Autowired
+    private ISeckillProductOrderService seckillProductOrderService;
+    @Autowired
+    private StockUtil stockUtil;
+    @Autowired
+    private SaleStateHolder saleStateHolder;
+    @Autowired
+    private OrderStateUtil orderStateUtil;
+
+    // 订单超时时间（秒）
+    @Value("${seckill.order.timeout-seconds:300}")
+    private long timeoutSeconds;
+    // 每批取消的订单数
+    @Value("${seckill.order.cancel-batch-size:500}")
+    private int cancelBatchSize;
+
+    // 将订单放入到期分桶（一次pipeline）
+    public void schedule(Collection<SeckillProductOrder> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (SeckillProductOrder order : orders) {
+                    long second = order.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond() + timeoutSeconds;
+                    operations.opsForSet().add(ORDER_TIMEOUT_BUCKET_KEY + second, order.getId().toString());
+                    operations.opsForZSet().add(ORDER_TIMEOUT_WHEEL_KEY, String.valueOf(second), second);
+                }
+                return null;
+            }
+        });
+    }
+
+    // 每秒处理一次到期分桶
+    @Scheduled(fixedDelay = 1000)
+    public void drain() {
+        RLock lock = redissonClient.getLock(LOCK_ORDER_TIMEOUT_KEY);
+        try {
+            if (lock.tryLock(0, 30, TimeUnit.SECONDS)) {
+                // 先重放上次中断的库存归还
+                replayRestores();
+                long now = System.currentTimeMillis() / 1000;
+                Set<String> seconds = stringRedisTemplate.opsForZSet().rangeByScore(ORDER_TIMEOUT_WHEEL_KEY, 0, now);
+                if (seconds == null) {
+                    return;
+                }
+                for (String second : seconds) {
+                    drainBucket(second);
+                }
+            }
+        } catch (Exception e) {
+            log.error("订单超时处理失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // 取消一个分桶内的订单，处理完成后删除分桶（中途失败下次重试，取消操作幂等）
+    private void drainBucket(String second) {
+        String bucketKey = ORDER_TIMEOUT_BUCKET_KEY + second;
+        Set<String> members = stringRedisTemplate.opsForSet().members(bucketKey);
+        if (members != null && !members.isEmpty()) {
+            List<Long> orderIds = members.stream().map(Long::valueOf).toList();
+            for (int i = 0; i < orderIds.size(); i += cancelBatchSize) {
+                cancel(orderIds.subList(i, Math.min(i + cancelBatchSize, orderIds.size())));
+            }
+        }
+        stringRedisTemplate.delete(bucketKey);
+        stringRedisTemplate.opsForZSet().remove(ORDER_TIMEOUT_WHEEL_KEY, second);
+    }
+
+    // 批量取消订单，并按商品归还redis库存、移除下单记录
+    public void cancel(Collection<Long> orderIds) {
+        // 先在redis中原子切换订单状态，只跳过已在redis中支付的订单；
+        // redis中已取消的订单可能是上次处理中断遗留的，继续交给数据库取消（status = 0 条件保证幂等）
+        Map<Long, Integer> states = orderStateUtil.cancel(orderIds, LocalDateTime.now());
+        List<Long> cancelIds = states.entrySet().stream()
+                .filter(e -> e.getValue() != OrderStateUtil.CANCEL_PAID)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (cancelIds.isEmpty()) {
+            return;
+        }
+        // 数据库取消提交前记录待归还的订单，归还redis库存后移除
+        String[] pending = cancelIds.stream().map(String::valueOf).toArray(String[]::new);
+        stringRedisTemplate.opsForSet().add(ORDER_RESTORE_PENDING_KEY, pending);
+        List<SeckillProductOrder> cancelled = seckillProductOrderService.cancelTimeoutOrders(cancelIds);
+        restore(cancelled);
+        stringRedisTemplate.opsForSet().remove(ORDER_RESTORE_PENDING_KEY, (Object[]) pending);
+        if (!cancelled.isEmpty()) {
+            log.info("⏰ 订单超时取消成功 {} 条", cancelled.size());
+        }
+    }
+
+    // 重放中断的库存归还：只归还数据库中已取消的订单（未提交的取消由时间轮分桶重试）
+    private void replayRestores() {
+        Set<String> members = stringRedisTemplate.opsForSet().members(ORDER_RESTORE_PENDING_KEY);
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        List<Long> orderIds = members.stream().map(Long::valueOf).toList();
+        for (int i = 0; i < orderIds.size(); i += cancelBatchSize) {
+            List<Long> batch = orderIds.subList(i, Math.min(i + cancelBatchSize, orderIds.size()));
+            List<SeckillProductOrder> cancelled = seckillProductOrderService.query()
+                    .select("id", "user_id", "seckill_product_id")
+                    .in("id", batch)
+                    .eq("status", 2)
+                    .list();
+            restore(cancelled);
+            stringRedisTemplate.opsForSet().remove(ORDER_RESTORE_PENDING_KEY, batch.stream().map(String::valueOf).toArray());
+            log.info("⏰ 重放订单取消库存归还 {} 条", cancelled.size());
+        }
+    }
+
+    // 按商品归还redis库存、移除下单记录（可重复执行）
+    private void restore(List<SeckillProductOrder> cancelled) {
+        Map<Long, List<Long>> usersByProduct = cancelled.stream()
+                .collect(Collectors.groupingBy(SeckillProductOrder::getSeckillProductId,
+                        Collectors.mapping(SeckillProductOrder::getUserId, Collectors.toCollection(ArrayList::new))));
+        usersByProduct.forEach((productId, userIds) -> {
+            stockUtil.restore(productId, userIds);
+            saleStateHolder.publishRestock(productId);
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.flash_seckill.utils;
+
+/**
+ * 商品id过滤器，用于拦截不存在商品的查询（允许误判存在，不允许误判不存在）
+ */
+public interface ProductFilter {
+
+    // 商品可能存在
+    boolean mightContain(long id);
+
+    // 新增商品
+    void add(long id);
+
+    // 删除商品
+    void remove(long id);
+}
@@ -0,0 +1,143 @@
+package com.flash_seckill.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flash_seckill.mapper.SeckillProductMapper;
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import com.flash_seckill.pojo.vo.RankVO;
+import com.flash_seckill.result.Result;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.flash_seckill.constants.RedisConstants.*;
+
+/**
+ * 热度排行榜快照
+ * 排行榜更新后由定时任务补全商品信息、序列化为完整的响应体，带版本号写入 rank:snapshot 并广播版本号；
+ * 各节点收到更新的版本后拉取快照整体替换，排行榜接口直接返回内存中的响应字节，不访问redis和数据库
+ */
+@Slf4j
+@Component
+public class RankSnapshot implements MessageListener {
+
+    private static final TypeReference<Result<List<RankVO>>> RESULT_TYPE = new TypeReference<>() {
+    };
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private CacheUtil cacheUtil;
+    @Autowired
+    private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    // 订阅快照频道，并加载当前快照
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RANK_SNAPSHOT_CHANNEL));
+        try {
+            load();
+        } catch (Exception e) {
+            log.warn("加载排行榜快照失败，等待下次更新", e);
+        }
+    }
+
+    // 序列化好的排行榜响应
+    public byte[] getBody() {
+        return current.get().body;
+    }
+
+    // 排行榜
+    public List<RankVO> getRanks() {
+        return current.get().ranks;
+    }
+
+    // 补全商品信息并发布新版本快照（ranked按热度降序）
+    public void publish(Map<Long, Double> ranked) throws Exception {
+        List<RankVO> ranks = new ArrayList<>(ranked.size());
+        for (Map.Entry<Long, Double> entry : ranked.entrySet()) {
+            SeckillProduct product = cacheUtil.getProduct(CACHE_PRODUCT_KEY, entry.getKey(), SeckillProduct.class,
+                    seckillProductMapper::selectById);
+            if (product == null) {
+                continue;
+            }
+            RankVO rankVO = new RankVO();
+            rankVO.setName(product.getName());
+            rankVO.setImg(product.getImg());
+            rankVO.setPrice(product.getPrice());
+            rankVO.setStock(product.getStock());
+            rankVO.setHeatValue((int) Math.round(entry.getValue()));
+            rankVO.setRank(ranks.size() + 1);
+            ranks.add(rankVO);
+        }
+        String body = objectMapper.writeValueAsString(Result.success(ranks));
+        Long version = stringRedisTemplate.opsForValue().increment(RANK_SNAPSHOT_VERSION_KEY);
+        stringRedisTemplate.opsForHash().putAll(RANK_SNAPSHOT_KEY, Map.of("version", version.toString(), "body", body));
+        install(version, body);
+        stringRedisTemplate.convertAndSend(RANK_SNAPSHOT_CHANNEL, version.toString());
+    }
+
+    // 收到新版本号后拉取快照
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        long version = Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (version <= current.get().version) {
+            return;
+        }
+        try {
+            load();
+        } catch (Exception e) {
+            log.error("拉取排行榜快照失败: {}", version, e);
+        }
+    }
+
+    // 从redis加载快照
+    private void load() throws Exception {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(RANK_SNAPSHOT_KEY, List.of("version", "body"));
+        if (values.get(0) == null || values.get(1) == null) {
+            return;
+        }
+        install(Long.parseLong((String) values.get(0)), (String) values.get(1));
+    }
+
+    // 只替换为更新的版本
+    private void install(long version, String body) throws Exception {
+        Result<List<RankVO>> result = objectMapper.readValue(body, RESULT_TYPE);
+        Snapshot snapshot = new Snapshot(version, body.getBytes(StandardCharsets.UTF_8), List.copyOf(result.getData()));
+        current.getAndUpdate(old -> old.version < version ? snapshot : old);
+    }
+
+    private static class Snapshot {
+        // 尚未加载到快照时返回空排行榜
+        private static final Snapshot EMPTY = new Snapshot(0,
+                "{\"code\":1,\"msg\":null,\"data\":[]}".getBytes(StandardCharsets.UTF_8), List.of());
+
+        private final long version;
+        private final byte[] body;
+        private final List<RankVO> ranks;
+
+        private Snapshot(long version, byte[] body, List<RankVO> ranks) {
+            this.version = version;
+            this.body = body;
+            this.ranks = ranks;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.flash_seckill.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 带逻辑过期时间的缓存数据
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RedisData<T> {
+
+    // 逻辑过期时间（毫秒时间戳）
+    private Long expireTime;
+    private T data;
+}
@@ -0,0 +1,110 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.mapper.SeckillProductMapper;
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import com.flash_seckill.service.ISeckillProductService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.flash_seckill.constants.RedisConstants.PREWARM_CHANNEL;
+
+/**
+ * 秒杀预热
+ * 抢到锁的节点用一次范围查询找出即将开始和正在进行的秒杀商品，批量写入库存（不覆盖已有库存）、商品缓存和商品过滤器，
+ * 再广播商品id，各节点加载售卖状态、库存分片数，并在开始前一刻加载本地缓存，秒杀开始后无需访问数据库
+ */
+@Slf4j
+@Component
+public class SalePrewarmer implements MessageListener {
+
+    @Autowired
+    private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private TaskScheduler taskScheduler;
+    @Autowired
+    private StockUtil stockUtil;
+    @Autowired
+    private CacheUtil cacheUtil;
+    @Autowired
+    private ProductFilter productFilter;
+    @Autowired
+    private SaleStateHolder saleStateHolder;
+    @Autowired
+    private ISeckillProductService seckillProductService;
+
+    // 提前预热的时间（秒）
+    @Value("${seckill.prewarm.lead-seconds:300}")
+    private long leadSeconds;
+    // 开始前多久加载本地缓存（毫秒）
+    @Value("${seckill.prewarm.local-lead-millis:2000}")
+    private long localLeadMillis;
+
+    // 订阅预热频道
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(PREWARM_CHANNEL));
+    }
+
+    // 预热redis并通知所有节点预热本地状态，返回预热的商品数
+    public int prewarm() {
+        LocalDateTime now = LocalDateTime.now();
+        List<SeckillProduct> products = seckillProductMapper.selectUpcoming(now, now.plusSeconds(leadSeconds));
+        if (products.isEmpty()) {
+            return 0;
+        }
+        // 库存（已存在的不覆盖）、商品缓存各一次pipeline
+        stockUtil.warmStock(products);
+        cacheUtil.preheat(products);
+        for (SeckillProduct product : products) {
+            // 商品来自数据库，一定存在；不用 mightContain 判断（误判存在的商品会漏加），由过滤器按id去重
+            productFilter.add(product.getId());
+        }
+        String ids = products.stream().map(p -> p.getId().toString()).collect(Collectors.joining(","));
+        stringRedisTemplate.convertAndSend(PREWARM_CHANNEL, ids);
+        return products.size();
+    }
+
+    // 各节点预热本地状态（商品信息从redis读取），交给任务线程执行，不阻塞redis消息监听线程
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        taskScheduler.schedule(() -> warmLocal(body), Instant.now());
+    }
+
+    private void warmLocal(String body) {
+        for (String value : body.split(",")) {
+            Long id = Long.valueOf(value);
+            SeckillProduct product = seckillProductService.getCachedProduct(id);
+            if (product == null) {
+                continue;
+            }
+            saleStateHolder.register(product);
+            stockUtil.getShardCount(id);
+            // 本地缓存过期时间较短，在开始前一刻再加载一次
+            Instant warmAt = product.getStartTime().atZone(ZoneId.systemDefault()).toInstant().minusMillis(localLeadMillis);
+            if (warmAt.isAfter(Instant.now())) {
+                taskScheduler.schedule(() -> seckillProductService.getCachedProduct(id), warmAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.flash_seckill.constants.RedisConstants.SALE_STATE_CHANNEL;
+
+/**
+ * 节点本地的商品售卖状态机
+ * 根据秒杀开始/结束时间设置定时器切换状态，售罄通过redis发布订阅同步到所有节点，
+ * 非售卖状态的请求无需访问redis和数据库即可直接拒绝
+ */
+@Slf4j
+@Component
+public class SaleStateHolder implements MessageListener {
+
+    public enum SaleState {
+        // 未开始
+        PENDING,
+        // 售卖中
+        OPEN,
+        // 已售罄
+        SOLD_OUT,
+        // 已结束
+        CLOSED
+    }
+
+    // 广播动作：售罄、补货（订单取消归还库存）、失效（商品被修改或删除，下次访问重新加载）
+    private static final String ACTION_SOLD_OUT = "SOLD_OUT";
+    private static final String ACTION_RESTOCK = "RESTOCK";
+    private static final String ACTION_EVICT = "EVICT";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    private final ConcurrentHashMap<Long, ProductSale> sales = new ConcurrentHashMap<>();
+
+    // 订阅售卖状态频道
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(SALE_STATE_CHANNEL));
+    }
+
+    // 获取商品售卖状态，未加载返回null
+    public SaleState getState(Long productId) {
+        ProductSale sale = sales.get(productId);
+        return sale == null ? null : sale.state;
+    }
+
+    // 加载商品售卖状态，并按开始/结束时间设置定时器
+    public SaleState register(SeckillProduct product) {
+        ProductSale sale = sales.computeIfAbsent(product.getId(), id -> schedule(product));
+        return sale.state;
+    }
+
+    // 标记售罄，并通知其他节点
+    public void markSoldOut(Long productId) {
+        if (soldOut(productId)) {
+            stringRedisTemplate.convertAndSend(SALE_STATE_CHANNEL, productId + ":" + ACTION_SOLD_OUT);
+        }
+    }
+
+    // 库存归还，通知所有节点恢复售卖
+    public void publishRestock(Long productId) {
+        restock(productId);
+        stringRedisTemplate.convertAndSend(SALE_STATE_CHANNEL, productId + ":" + ACTION_RESTOCK);
+    }
+
+    // 商品被修改或删除，通知所有节点丢弃本地状态
+    public void publishEvict(Long productId) {
+        evict(productId);
+        stringRedisTemplate.convertAndSend(SALE_STATE_CHANNEL, productId + ":" + ACTION_EVICT);
+    }
+
+    // 接收其他节点的广播
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        if (index <= 0) {
+            log.warn("无法解析的售卖状态消息: {}", body);
+            return;
+        }
+        Long productId = Long.valueOf(body.substring(0, index));
+        String action = body.substring(index + 1);
+        if (ACTION_SOLD_OUT.equals(action)) {
+            soldOut(productId);
+        } else if (ACTION_RESTOCK.equals(action)) {
+            restock(productId);
+        } else if (ACTION_EVICT.equals(action)) {
+            evict(productId);
+        }
+    }
+
+    // 本地切换为售罄，状态发生变化返回true
+    private boolean soldOut(Long productId) {
+        ProductSale sale = sales.get(productId);
+        if (sale == null || sale.state != SaleState.OPEN) {
+            return false;
+        }
+        synchronized (sale) {
+            if (sale.state != SaleState.OPEN) {
+                return false;
+            }
+            sale.state = SaleState.SOLD_OUT;
+        }
+        log.info("商品已售罄，本地拒绝后续秒杀请求: {}", productId);
+        return true;
+    }
+
+    // 本地由售罄恢复为售卖中（已结束的商品保持结束）
+    private void restock(Long productId) {
+        ProductSale sale = sales.get(productId);
+        if (sale == null) {
+            return;
+        }
+        synchronized (sale) {
+            if (sale.state == SaleState.SOLD_OUT) {
+                sale.state = SaleState.OPEN;
+            }
+        }
+    }
+
+    // 丢弃本地状态并取消定时器
+    private void evict(Long productId) {
+        ProductSale sale = sales.remove(productId);
+        if (sale != null) {
+            sale.cancel();
+        }
+    }
+
+    // 计算当前状态，设置开始、结束定时器
+    private ProductSale schedule(SeckillProduct product) {
+        ProductSale sale = new ProductSale();
+        Instant start = product.getStartTime().atZone(ZoneId.systemDefault()).toInstant();
+        Instant end = product.getEndTime().atZone(ZoneId.systemDefault()).toInstant();
+        Instant now = Instant.now();
+        if (!now.isBefore(end)) {
+            sale.state = SaleState.CLOSED;
+            return sale;
+        }
+        if (now.isBefore(start)) {
+            sale.state = SaleState.PENDING;
+            sale.openTask = taskScheduler.schedule(() -> sale.open(), start);
+        } else {
+            sale.state = SaleState.OPEN;
+        }
+        sale.closeTask = taskScheduler.schedule(() -> sale.close(), end);
+        return sale;
+    }
+
+    private static class ProductSale {
+        private volatile SaleState state;
+        private ScheduledFuture<?> openTask;
+        private ScheduledFuture<?> closeTask;
+
+        // 到达开始时间，仅未开始状态可切换为售卖中
+        private synchronized void open() {
+            if (state == SaleState.PENDING) {
+                state = SaleState.OPEN;
+            }
+        }
+
+        // 到达结束时间
+        private synchronized void close() {
+            state = SaleState.CLOSED;
+        }
+
+        private void cancel() {
+            if (openTask != null) {
+                openTask.cancel(false);
+            }
+            if (closeTask != null) {
+                closeTask.cancel(false);
+            }
+        }
+    }
+}
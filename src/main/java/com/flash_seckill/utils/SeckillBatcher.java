@@ -0,0 +1,182 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.exception.BusinessException;
+import com.flash_seckill.exception.ErrorCode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 秒杀请求微批处理
+ * 同一库存key的并发请求在批次窗口内合并（或达到批次上限立即提交），
+ * 一次lua调用完成整批的库存扣减和下单用户记录，再按顺序把结果分发给各请求
+ */
+@Slf4j
+@Component
+public class SeckillBatcher {
+
+    // 批量秒杀脚本
+    private static final DefaultRedisScript<List<Long>> SECKILL_BATCH_SCRIPT;
+
+    // 初始化
+    static {
+        // 脚本返回整数数组，结果类型只能用List.class声明
+        @SuppressWarnings("unchecked")
+        Class<List<Long>> resultType = (Class<List<Long>>) (Class<?>) List.class;
+        SECKILL_BATCH_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_BATCH_SCRIPT.setLocation(new ClassPathResource("seckill_batch.lua"));
+        SECKILL_BATCH_SCRIPT.setResultType(resultType);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MemberStorage memberStorage;
+
+    // 是否启用批处理
+    @Value("${seckill.batch.enabled:true}")
+    private boolean enabled;
+    // 批次窗口（微秒）
+    @Value("${seckill.batch.window-micros:500}")
+    private long windowMicros;
+    // 批次上限
+    @Value("${seckill.batch.max-size:64}")
+    private int maxSize;
+    // 等待结果超时时间（毫秒）
+    @Value("${seckill.batch.timeout-millis:1000}")
+    private long timeoutMillis;
+
+    // 正在收集的批次（key为库存key）
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors());
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 提交秒杀请求（member为用户在下单记录中的成员），阻塞等待所在批次的结果：0-成功 1-库存不足 2-重复下单
+    public int seckill(String stockKey, String userKey, String member) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        Batch[] full = new Batch[1];
+        batches.compute(stockKey, (key, batch) -> {
+            if (batch == null) {
+                // 新批次，窗口结束后提交
+                Batch created = new Batch(stockKey, userKey);
+                executor.schedule(() -> {
+                    batches.remove(key, created);
+                    flush(created);
+                }, windowMicros, TimeUnit.MICROSECONDS);
+                batch = created;
+            }
+            batch.members.add(member);
+            batch.futures.add(future);
+            if (batch.members.size() >= maxSize) {
+                // 达到批次上限，立即提交
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (full[0] != null) {
+            Batch batch = full[0];
+            executor.execute(() -> flush(batch));
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            // 放弃等待时批次可能仍会执行成功，成功后归还库存并移除下单记录，避免库存被占用却没有订单
+            future.thenAccept(r -> {
+                if (r == 0) {
+                    compensate(stockKey, userKey, member);
+                }
+            });
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.warn("秒杀批处理超时: key={}", stockKey);
+            throw new BusinessException(ErrorCode.ORDER_SECKILL_BUSY);
+        } catch (Exception e) {
+            // 批次脚本执行失败，库存和下单记录均未修改
+            log.error("秒杀批处理失败: key={}", stockKey, e);
+            throw new BusinessException(ErrorCode.ORDER_SECKILL_BUSY);
+        }
+    }
+
+    // 归还已放弃等待的成功请求占用的库存，并移除下单记录（一次pipeline）
+    private void compensate(String stockKey, String userKey, String member) {
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    operations.opsForValue().increment(stockKey);
+                    memberStorage.remove(operations, userKey, List.of(member));
+                    return null;
+                }
+            });
+            log.warn("秒杀批处理超时后执行成功，已归还库存: key={}, member={}", stockKey, member);
+        } catch (Exception e) {
+            log.error("秒杀批处理超时后归还库存失败: key={}, member={}", stockKey, member, e);
+        }
+    }
+
+    // 执行批量秒杀脚本，按提交顺序分发结果
+    private void flush(Batch batch) {
+        if (!batch.flushed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Object[] args = new Object[batch.members.size() + 1];
+            args[0] = memberStorage.mode();
+            for (int i = 0; i < batch.members.size(); i++) {
+                args[i + 1] = batch.members.get(i);
+            }
+            List<Long> result = stringRedisTemplate.execute(SECKILL_BATCH_SCRIPT,
+                    List.of(batch.stockKey, batch.userKey), args);
+            for (int i = 0; i < batch.futures.size(); i++) {
+                batch.futures.get(i).complete(result.get(i).intValue());
+            }
+            log.debug("批量秒杀完成: key={}, size={}", batch.stockKey, batch.futures.size());
+        } catch (Exception e) {
+            log.error("批量秒杀失败: key={}", batch.stockKey, e);
+            batch.futures.forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class Batch {
+        private final String stockKey;
+        private final String userKey;
+        private final List<String> members = new ArrayList<>();
+        private final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        private final AtomicBoolean flushed = new AtomicBoolean();
+
+        private Batch(String stockKey, String userKey) {
+            this.stockKey = stockKey;
+            this.userKey = userKey;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.mapper.SeckillProductMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.flash_seckill.constants.RedisConstants.*;
+
+/**
+ * 各节点共享的商品过滤器
+ * 快照（计数布隆过滤器序列化后的字节）保存在redis中，由抢到锁的节点定期根据数据库重建；
+ * 快照之后的新增、删除记录在增量list中并广播给所有节点，节点加载快照后重放增量中的新增
+ * （删除不重放，只会带来误判存在，下次重建后消除）。删除只作用于构建时间早于删除时间的过滤器，
+ * 之后构建的过滤器本就不含该商品，再删除会减掉其他商品的计数造成误判不存在。元素个数超过容量时按两倍容量重建。
+ * 各节点定期把过滤器写入本地快照文件，启动时映射快照文件，只补齐高水位（快照中最大id）之后新增的商品
+ */
+@Slf4j
+@Component
+public class SharedProductFilter implements ProductFilter, MessageListener {
+
+    // 广播动作：新增、删除、重新加载快照
+    private static final String ACTION_ADD = "ADD";
+    private static final String ACTION_DEL = "DEL";
+    private static final String ACTION_RELOAD = "RELOAD";
+    // 快照与增量的时间重叠（毫秒），容忍节点间的时钟偏差
+    private static final long CLOCK_SKEW_MILLIS = 5000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private RedissonClient redissonClient;
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    // 初始容量
+    @Value("${seckill.filter.expected-insertions:10000}")
+    private long expectedInsertions;
+    // 期望误判率
+    @Value("${seckill.filter.fpp:0.01}")
+    private double fpp;
+    // 本地快照文件
+    @Value("${seckill.filter.snapshot-file:./data/product-filter.snap}")
+    private String snapshotFile;
+
+    // 区分广播来源，忽略本节点发出的增量
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile CountingBloomFilter filter;
+    // 当前过滤器在快照之后加入的id，同一id只加入一次
+    private volatile Set<Long> added = ConcurrentHashMap.newKeySet();
+    // 上次写入本地快照后是否有变化
+    private volatile boolean dirty;
+
+    // 订阅广播并加载快照：优先使用本地快照，其次redis中的快照，都没有时由本节点构建
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(PRODUCT_FILTER_CHANNEL));
+        if (loadLocal() || reload()) {
+            return;
+        }
+        rebuild();
+    }
+
+    @Override
+    public boolean mightContain(long id) {
+        CountingBloomFilter current = filter;
+        // 尚未加载时放行，由缓存和数据库判断
+        return current == null || current.mightContain(id);
+    }
+
+    // 新增商品：记录增量并广播（同一过滤器内同一id只加入一次，可重复调用）
+    @Override
+    public void add(long id) {
+        if (!added.add(id)) {
+            return;
+        }
+        publish(ACTION_ADD, id);
+        CountingBloomFilter current = filter;
+        if (current != null) {
+            current.add(id);
+            dirty = true;
+            growIfFull(current);
+        }
+    }
+
+    // 删除商品：记录增量并广播
+    @Override
+    public void remove(long id) {
+        long time = publish(ACTION_DEL, id);
+        removeBefore(filter, id, time);
+    }
+
+    // 定期根据数据库重建，消除删除不重放和计数器饱和带来的误判
+    @Scheduled(initialDelayString = "${seckill.filter.rebuild-interval-millis:600000}",
+            fixedDelayString = "${seckill.filter.rebuild-interval-millis:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    // 根据数据库重建过滤器，写入快照并通知所有节点重新加载
+    public void rebuild() {
+        RLock lock = redissonClient.getLock(LOCK_PRODUCT_FILTER_KEY);
+        try {
+            if (!lock.tryLock(0, 60, TimeUnit.SECONDS)) {
+                return;
+            }
+            long createTime = System.currentTimeMillis();
+            Collection<Long> ids = seckillProductMapper.idList();
+            CountingBloomFilter rebuilt = new CountingBloomFilter(
+                    Math.max(expectedInsertions, ids.size() * 2L), fpp, createTime);
+            for (Long id : ids) {
+                rebuilt.add(id);
+            }
+            byte[] bytes = rebuilt.toBytes();
+            byte[] key = PRODUCT_FILTER_KEY.getBytes(StandardCharsets.UTF_8);
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands().set(key, bytes));
+            trimDeltas(createTime - CLOCK_SKEW_MILLIS);
+            install(rebuilt);
+            stringRedisTemplate.convertAndSend(PRODUCT_FILTER_CHANNEL, nodeId + ":" + ACTION_RELOAD + ":" + createTime);
+            log.info("商品过滤器重建完成，商品数：{}，容量：{}", ids.size(), rebuilt.getCapacity());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("商品过滤器重建失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // 接收其他节点的广播
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        CountingBloomFilter current = filter;
+        switch (parts[1]) {
+            case ACTION_ADD -> {
+                if (current != null && added.add(Long.parseLong(parts[2]))) {
+                    current.add(Long.parseLong(parts[2]));
+                    dirty = true;
+                }
+            }
+            case ACTION_DEL -> {
+                // 删除时间由广播携带，不带时间的旧消息不处理（只会带来误判存在）
+                if (parts.length == 4) {
+                    removeBefore(current, Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                }
+            }
+            case ACTION_RELOAD -> reload();
+            default -> log.warn("无法解析的商品过滤器消息: {}", parts[1]);
+        }
+    }
+
+    // 从redis加载快照，不存在返回false
+    private boolean reload() {
+        byte[] key = PRODUCT_FILTER_KEY.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        if (bytes == null) {
+            return false;
+        }
+        try {
+            install(CountingBloomFilter.fromBytes(bytes));
+            return true;
+        } catch (IllegalArgumentException e) {
+            log.warn("redis中的商品过滤器快照格式不兼容，重新构建");
+            return false;
+        }
+    }
+
+    // 映射本地快照文件，补齐高水位之后新增的商品，不存在或无法读取返回false
+    private boolean loadLocal() {
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CountingBloomFilter snapshot = CountingBloomFilter.read(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            Collection<Long> ids = seckillProductMapper.idListAfter(snapshot.getMaxId());
+            for (Long id : ids) {
+                snapshot.add(id);
+            }
+            install(snapshot);
+            log.info("商品过滤器从本地快照加载完成，高水位：{}，补齐商品数：{}，耗时：{}ms",
+                    snapshot.getMaxId(), ids.size(), System.currentTimeMillis() - start);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("商品过滤器本地快照加载失败：{}", path, e);
+            return false;
+        }
+    }
+
+    // 定期写入本地快照（先写临时文件再替换，避免进程中断留下不完整的快照）
+    @Scheduled(fixedDelayString = "${seckill.filter.snapshot-interval-millis:60000}")
+    @PreDestroy
+    public void saveLocal() {
+        CountingBloomFilter current = filter;
+        if (current == null || !dirty) {
+            return;
+        }
+        dirty = false;
+        Path path = Paths.get(snapshotFile);
+        try {
+            Path dir = path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, "product-filter", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(current.toBytes());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            log.warn("写入商品过滤器本地快照失败：{}", path, e);
+        }
+    }
+
+    // 重放快照之后的新增（同一id只重放一次），再替换当前过滤器
+    private void install(CountingBloomFilter snapshot) {
+        Set<Long> replayed = ConcurrentHashMap.newKeySet();
+        List<String> deltas = stringRedisTemplate.opsForList().range(PRODUCT_FILTER_DELTA_KEY, 0, -1);
+        if (deltas != null) {
+            long since = snapshot.getCreateTime() - CLOCK_SKEW_MILLIS;
+            for (String delta : deltas) {
+                String[] parts = delta.split(":");
+                if (ACTION_ADD.equals(parts[1]) && Long.parseLong(parts[0]) >= since
+                        && replayed.add(Long.parseLong(parts[2]))) {
+                    snapshot.add(Long.parseLong(parts[2]));
+                }
+            }
+        }
+        added = replayed;
+        filter = snapshot;
+        dirty = true;
+        growIfFull(snapshot);
+    }
+
+    // 只在过滤器构建时间早于删除时间时删除（留出时钟偏差），之后构建的过滤器可能已不含该商品
+    private void removeBefore(CountingBloomFilter current, long id, long deleteTime) {
+        if (current != null && current.getCreateTime() + CLOCK_SKEW_MILLIS < deleteTime) {
+            current.remove(id);
+            dirty = true;
+        }
+    }
+
+    // 记录增量（时间戳:动作:商品id）并广播（节点id:动作:商品id:时间戳），返回时间戳
+    private long publish(String action, long id) {
+        long time = System.currentTimeMillis();
+        stringRedisTemplate.opsForList().rightPush(PRODUCT_FILTER_DELTA_KEY, time + ":" + action + ":" + id);
+        stringRedisTemplate.convertAndSend(PRODUCT_FILTER_CHANNEL, nodeId + ":" + action + ":" + id + ":" + time);
+        return time;
+    }
+
+    // 删除快照已包含的增量（list按时间顺序追加）
+    private void trimDeltas(long before) {
+        List<String> deltas = stringRedisTemplate.opsForList().range(PRODUCT_FILTER_DELTA_KEY, 0, -1);
+        if (deltas == null) {
+            return;
+        }
+        int covered = 0;
+        while (covered < deltas.size() && Long.parseLong(deltas.get(covered).split(":")[0]) < before) {
+            covered++;
+        }
+        if (covered > 0) {
+            stringRedisTemplate.opsForList().trim(PRODUCT_FILTER_DELTA_KEY, covered, -1);
+        }
+    }
+
+    // 元素个数超过容量时异步扩容重建
+    private void growIfFull(CountingBloomFilter current) {
+        if (current.isFull() && rebuilding.compareAndSet(false, true)) {
+            log.info("商品过滤器元素个数 {} 超过容量 {}，扩容重建", current.size(), current.getCapacity());
+            taskScheduler.schedule(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuilding.set(false);
+                }
+            }, Instant.now());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.flash_seckill.utils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 商品实时库存推送（SSE）
+ * 每个节点按推送间隔用一次MGET读取所有有订阅者的商品库存，库存变化时才推送，
+ * 每个商品每秒最多推送 1000/interval-millis 次；每次推送的事件只构建一次，由推送线程池发给该商品的所有连接。
+ * 每个连接最多只有一个待执行的推送任务，上一次推送未完成时只保留最新的事件，慢连接会跳过中间的库存变化，
+ * 线程池队列长度不超过连接数
+ */
+@Slf4j
+@Component
+public class StockStreamHub {
+
+    @Autowired
+    private StockUtil stockUtil;
+
+    // 连接超时时间（毫秒），超时后由客户端重连
+    @Value("${seckill.stream.timeout-millis:300000}")
+    private long timeoutMillis;
+    // 单节点最大连接数
+    @Value("${seckill.stream.max-connections:10000}")
+    private int maxConnections;
+    // 心跳间隔（毫秒），及时发现已断开的连接
+    @Value("${seckill.stream.heartbeat-millis:15000}")
+    private long heartbeatMillis;
+
+    // 各商品的订阅
+    private final ConcurrentHashMap<Long, Topic> topics = new ConcurrentHashMap<>();
+    // 当前连接数
+    private final AtomicInteger connections = new AtomicInteger();
+    // 推送线程池，慢连接不会阻塞库存读取和其他连接
+    private final ExecutorService fanoutExecutor;
+    // 上次心跳时间
+    private long lastHeartbeat = System.currentTimeMillis();
+
+    public StockStreamHub(@Value("${seckill.stream.fanout-threads:4}") int fanoutThreads) {
+        this.fanoutExecutor = Executors.newFixedThreadPool(fanoutThreads, r -> {
+            Thread thread = new Thread(r, "stock-stream-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 订阅商品库存，连接数已满返回null
+    public SseEmitter subscribe(Long productId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        // 与unsubscribe在同一个map节点上原子执行，不会加入已被移除的商品订阅
+        topics.compute(productId, (id, topic) -> {
+            Topic current = topic == null ? new Topic() : topic;
+            current.subscribers.add(subscriber);
+            return current;
+        });
+        Runnable remove = () -> unsubscribe(productId, subscriber);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        // 立即推送一次当前库存
+        Long stock = stockUtil.getStocks(List.of(productId)).get(productId);
+        if (stock != null) {
+            offer(subscriber, event(productId, stock), true);
+        }
+        return emitter;
+    }
+
+    // 按推送间隔读取有订阅者的商品库存，推送有变化的商品
+    @Scheduled(fixedRateString = "${seckill.stream.interval-millis:200}")
+    public void publish() {
+        if (topics.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> stocks;
+        try {
+            stocks = stockUtil.getStocks(topics.keySet());
+        } catch (Exception e) {
+            log.error("读取推送库存失败", e);
+            return;
+        }
+        stocks.forEach((productId, stock) -> {
+            Topic topic = topics.get(productId);
+            if (topic == null || stock == topic.lastStock) {
+                return;
+            }
+            topic.lastStock = stock;
+            Set<ResponseBodyEmitter.DataWithMediaType> event = event(productId, stock);
+            topic.subscribers.forEach(subscriber -> offer(subscriber, event, true));
+        });
+        long now = System.currentTimeMillis();
+        if (now - lastHeartbeat >= heartbeatMillis) {
+            lastHeartbeat = now;
+            Set<ResponseBodyEmitter.DataWithMediaType> heartbeat = SseEmitter.event().comment("ping").build();
+            // 已有待推送的库存事件时不再追加心跳
+            topics.values().forEach(topic -> topic.subscribers.forEach(subscriber -> offer(subscriber, heartbeat, false)));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        topics.values().forEach(topic -> topic.subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+        fanoutExecutor.shutdown();
+    }
+
+    // 放入连接的待推送事件（replace为false时不覆盖已有事件），没有推送任务时提交一个
+    private void offer(Subscriber subscriber, Set<ResponseBodyEmitter.DataWithMediaType> event, boolean replace) {
+        if (replace) {
+            subscriber.pending.set(event);
+        } else if (!subscriber.pending.compareAndSet(null, event)) {
+            return;
+        }
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            fanoutExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    // 推送连接的最新事件，直到没有新的事件
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Set<ResponseBodyEmitter.DataWithMediaType> event = subscriber.pending.getAndSet(null);
+            if (event == null) {
+                subscriber.scheduled.set(false);
+                // 释放标记后又有新事件且没有其他任务接手时继续推送
+                if (subscriber.pending.get() == null || !subscriber.scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            send(subscriber.emitter, event);
+        }
+    }
+
+    private void send(SseEmitter emitter, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        try {
+            emitter.send(event);
+        } catch (Exception e) {
+            // 连接已断开，由onError/onCompletion回调移除
+            emitter.completeWithError(e);
+        }
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> event(Long productId, long stock) {
+        return SseEmitter.event().name("stock").data("{\"id\":" + productId + ",\"stock\":" + stock + "}").build();
+    }
+
+    private void unsubscribe(Long productId, Subscriber subscriber) {
+        topics.computeIfPresent(productId, (id, topic) -> {
+            if (topic.subscribers.remove(subscriber)) {
+                connections.decrementAndGet();
+            }
+            // 最后一个订阅者离开后移除商品，不再读取其库存
+            return topic.subscribers.isEmpty() ? null : topic;
+        });
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        // 待推送的最新事件
+        private final AtomicReference<Set<ResponseBodyEmitter.DataWithMediaType>> pending = new AtomicReference<>();
+        // 是否已有推送任务
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    private static class Topic {
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        // 上次推送的库存
+        private volatile long lastStock = -1;
+    }
+}
@@ -0,0 +1,426 @@
+package com.flash_seckill.utils;
+
+import com.flash_seckill.mapper.SeckillProductMapper;
+import com.flash_seckill.pojo.entity.SeckillProduct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.flash_seckill.constants.RedisConstants.*;
+
+/**
+ * redis库存操作
+ * 分片数为1时沿用单个 product:stock:{id} 和 product:user:{id}；
+ * 分片数大于1时库存拆分到 product:stock:{id:n}，下单用户集合拆分到 product:user:{id:n}（bitmap存储方式见 MemberStorage），
+ * 同一分片的两个key使用相同的hash tag，可分布到redis集群的不同节点
+ */
+@Slf4j
+@Component
+public class StockUtil {
+
+    // 秒杀脚本
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    // 分片库存扣减脚本
+    private static final DefaultRedisScript<Long> STOCK_TAKE_SCRIPT;
+    // 订单取消归还库存脚本
+    private static final DefaultRedisScript<Long> STOCK_RESTORE_SCRIPT;
+    // 分片间转移库存脚本
+    private static final DefaultRedisScript<Long> STOCK_MOVE_SCRIPT;
+
+    // 初始化
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        STOCK_TAKE_SCRIPT = new DefaultRedisScript<>();
+        STOCK_TAKE_SCRIPT.setLocation(new ClassPathResource("stock_take.lua"));
+        STOCK_TAKE_SCRIPT.setResultType(Long.class);
+        STOCK_RESTORE_SCRIPT = new DefaultRedisScript<>();
+        STOCK_RESTORE_SCRIPT.setLocation(new ClassPathResource("stock_restore.lua"));
+        STOCK_RESTORE_SCRIPT.setResultType(Long.class);
+        STOCK_MOVE_SCRIPT = new DefaultRedisScript<>();
+        STOCK_MOVE_SCRIPT.setLocation(new ClassPathResource("stock_move.lua"));
+        STOCK_MOVE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SeckillBatcher seckillBatcher;
+    @Autowired
+    private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private MemberStorage memberStorage;
+
+    // 新上架商品的库存分片数
+    @Value("${seckill.stock.shard-count:1}")
+    private int shardCount;
+
+    // 商品分片数（秒杀期间不变，本地缓存）
+    private final ConcurrentHashMap<Long, Integer> shards = new ConcurrentHashMap<>();
+
+    // 库存分片key
+    public String stockKey(Long productId, int shard, int shardTotal) {
+        return shardTotal <= 1 ? PRODUCT_STOCK_KEY + productId : PRODUCT_STOCK_KEY + "{" + productId + ":" + shard + "}";
+    }
+
+    // 下单用户分片key（set或bitmap）
+    public String userKey(Long productId, int shard, int shardTotal) {
+        return memberStorage.buyerKey(productId, shard, shardTotal);
+    }
+
+    // 获取商品的库存分片数，未分片为1
+    public int getShardCount(Long productId) {
+        return shards.computeIfAbsent(productId, id -> {
+            String value = stringRedisTemplate.opsForValue().get(PRODUCT_SHARDS_KEY + id);
+            return value == null ? 1 : Integer.parseInt(value);
+        });
+    }
+
+    // 用户所在分片
+    public int homeShard(Long userId, int shardTotal) {
+        return (int) Math.floorMod(userId, (long) shardTotal);
+    }
+
+    // 初始化商品库存，按配置的分片数平均拆分
+    public void initStock(Long productId, int stock) {
+        int total = Math.max(1, shardCount);
+        shards.put(productId, total);
+        if (total == 1) {
+            stringRedisTemplate.opsForValue().set(PRODUCT_STOCK_KEY + productId, String.valueOf(stock));
+            return;
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                operations.opsForValue().set(PRODUCT_SHARDS_KEY + productId, String.valueOf(total));
+                for (int i = 0; i < total; i++) {
+                    int part = stock / total + (i < stock % total ? 1 : 0);
+                    operations.opsForValue().set(stockKey(productId, i, total), String.valueOf(part));
+                }
+                operations.opsForSet().add(SHARDED_PRODUCT_KEY, productId.toString());
+                return null;
+            }
+        });
+    }
+
+    // 批量预热库存：只写入redis中不存在的库存key（已开始售卖的商品不会被重置），沿用商品已有的分片方式
+    public void warmStock(Collection<SeckillProduct> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        List<SeckillProduct> list = new ArrayList<>(products);
+        List<String> shardValues = stringRedisTemplate.opsForValue()
+                .multiGet(list.stream().map(p -> PRODUCT_SHARDS_KEY + p.getId()).toList());
+        for (int i = 0; i < list.size(); i++) {
+            String value = shardValues == null ? null : shardValues.get(i);
+            shards.put(list.get(i).getId(), value == null ? 1 : Integer.parseInt(value));
+        }
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (SeckillProduct product : list) {
+                    int total = shards.get(product.getId());
+                    int stock = Math.max(0, product.getStock());
+                    for (int i = 0; i < total; i++) {
+                        int part = stock / total + (i < stock % total ? 1 : 0);
+                        operations.opsForValue().setIfAbsent(stockKey(product.getId(), i, total), String.valueOf(part));
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    // 执行秒杀：0-成功 1-库存不足 2-重复下单
+    public int seckill(Long productId, Long userId) {
+        int r = trySeckill(productId, userId);
+        if (r == 3) {
+            // 库存未预热，从数据库加载后重试一次
+            SeckillProduct product = seckillProductMapper.selectById(productId);
+            if (product == null) {
+                return 1;
+            }
+            log.warn("商品库存未预热，从数据库加载: {}", productId);
+            warmStock(List.of(product));
+            r = trySeckill(productId, userId);
+        }
+        return r == 3 ? 1 : r;
+    }
+
+    private int trySeckill(Long productId, Long userId) {
+        int total = getShardCount(productId);
+        int home = homeShard(userId, total);
+        String stockKey = stockKey(productId, home, total);
+        String userKey = userKey(productId, home, total);
+        String member = memberStorage.member(userId, total);
+        int r;
+        if (seckillBatcher.isEnabled()) {
+            // 合并同一分片的并发请求，一个批次只调用一次lua
+            r = seckillBatcher.seckill(stockKey, userKey, member);
+        } else {
+            Long result = stringRedisTemplate.execute(SECKILL_SCRIPT, List.of(stockKey, userKey), member, memberStorage.mode());
+            r = result.intValue();
+        }
+        if (r != 1 || total == 1) {
+            return r;
+        }
+        // 所在分片库存不足，依次尝试相邻分片
+        for (int i = 1; i < total; i++) {
+            int shard = (home + i) % total;
+            String neighbourKey = stockKey(productId, shard, total);
+            Long taken = stringRedisTemplate.execute(STOCK_TAKE_SCRIPT, Collections.singletonList(neighbourKey), "1");
+            if (taken == null || taken == 0) {
+                continue;
+            }
+            // 借到库存后在所在分片记录下单用户（两个key不在同一slot，无法放进同一个脚本），
+            // 并发重复请求或记录失败时在finally中归还库存
+            boolean recorded = false;
+            try {
+                recorded = memberStorage.add(stringRedisTemplate, userKey, member);
+                return recorded ? 0 : 2;
+            } finally {
+                if (!recorded) {
+                    stringRedisTemplate.opsForValue().increment(neighbourKey);
+                }
+            }
+        }
+        return 1;
+    }
+
+    // 订单取消：移除下单记录，允许用户再次下单
+    public void removeBuyer(Long productId, Long userId) {
+        int total = getShardCount(productId);
+        int home = homeShard(userId, total);
+        memberStorage.remove(stringRedisTemplate, userKey(productId, home, total), List.of(memberStorage.member(userId, total)));
+    }
+
+    // 订单取消：按用户所在分片移除下单记录并归还库存（每个分片一次lua，只为移除成功的用户归还，可重复执行）
+    public void restore(Long productId, Collection<Long> userIds) {
+        int total = getShardCount(productId);
+        Map<Integer, List<String>> byShard = new HashMap<>();
+        for (Long userId : userIds) {
+            byShard.computeIfAbsent(homeShard(userId, total), k -> new ArrayList<>()).add(memberStorage.member(userId, total));
+        }
+        byShard.forEach((shard, users) -> {
+            List<String> args = new ArrayList<>(users.size() + 1);
+            args.add(memberStorage.mode());
+            args.addAll(users);
+            stringRedisTemplate.execute(STOCK_RESTORE_SCRIPT,
+                    List.of(stockKey(productId, shard, total), userKey(productId, shard, total)), args.toArray());
+        });
+    }
+
+    // 商品的所有库存分片key
+    public List<String> stockKeys(Long productId) {
+        int total = getShardCount(productId);
+        List<String> keys = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            keys.add(stockKey(productId, i, total));
+        }
+        return keys;
+    }
+
+    // 查询redis中的剩余库存（各分片之和）
+    public long getStock(Long productId) {
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(stockKeys(productId));
+        long stock = 0;
+        if (values != null) {
+            for (String value : values) {
+                stock += value == null ? 0 : Long.parseLong(value);
+            }
+        }
+        return stock;
+    }
+
+    // 批量查询redis中的剩余库存（一次MGET，未加载库存的商品不在结果中）
+    public Map<Long, Long> getStocks(Collection<Long> productIds) {
+        // 本地未缓存分片数的商品先批量查询分片数
+        List<Long> unknown = productIds.stream().filter(id -> !shards.containsKey(id)).toList();
+        if (!unknown.isEmpty()) {
+            List<String> values = stringRedisTemplate.opsForValue()
+                    .multiGet(unknown.stream().map(id -> PRODUCT_SHARDS_KEY + id).toList());
+            for (int i = 0; i < unknown.size(); i++) {
+                String value = values == null ? null : values.get(i);
+                shards.putIfAbsent(unknown.get(i), value == null ? 1 : Integer.parseInt(value));
+            }
+        }
+        List<Long> ids = new ArrayList<>(productIds);
+        List<String> keys = new ArrayList<>();
+        for (Long id : ids) {
+            int total = getShardCount(id);
+            for (int i = 0; i < total; i++) {
+                keys.add(stockKey(id, i, total));
+            }
+        }
+        Map<Long, Long> stocks = new HashMap<>();
+        if (keys.isEmpty()) {
+            return stocks;
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return stocks;
+        }
+        int index = 0;
+        for (Long id : ids) {
+            int total = getShardCount(id);
+            long stock = 0;
+            boolean loaded = false;
+            for (int i = 0; i < total; i++) {
+                String value = values.get(index++);
+                if (value != null) {
+                    stock += Long.parseLong(value);
+                    loaded = true;
+                }
+            }
+            if (loaded) {
+                stocks.put(id, stock);
+            }
+        }
+        return stocks;
+    }
+
+    // 回收已结束（或已删除）商品的下单用户记录：SCAN 逐批遍历下单用户key，按批查询商品结束时间后 UNLINK
+    // 收藏用户key只回收已删除商品的：商品结束后仍可查看，保留收藏记录避免重复收藏再次计入热度
+    public int reclaimBuyers(LocalDateTime endedBefore, int batchSize) {
+        int reclaimed = 0;
+        for (String prefix : List.of(PRODUCT_USER_KEY, PRODUCT_BUYER_BITMAP_KEY)) {
+            reclaimed += reclaim(prefix, endedBefore, batchSize);
+        }
+        for (String prefix : List.of(PRODUCT_COLLECT_KEY, PRODUCT_COLLECTOR_BITMAP_KEY)) {
+            reclaimed += reclaim(prefix, null, batchSize);
+        }
+        return reclaimed;
+    }
+
+    // endedBefore 为 null 时只回收已删除商品的key
+    private int reclaim(String prefix, LocalDateTime endedBefore, int batchSize) {
+        int reclaimed = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(batchSize).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            List<String> keys = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+                if (keys.size() >= batchSize) {
+                    reclaimed += reclaim(prefix, keys, endedBefore);
+                    keys.clear();
+                }
+            }
+            if (!keys.isEmpty()) {
+                reclaimed += reclaim(prefix, keys, endedBefore);
+            }
+        }
+        return reclaimed;
+    }
+
+    private int reclaim(String prefix, List<String> keys, LocalDateTime endedBefore) {
+        Map<Long, List<String>> keysByProduct = new HashMap<>();
+        for (String key : keys) {
+            // product:user:{id} 或分片的 product:user:{id:n}
+            String rest = key.substring(prefix.length());
+            if (rest.startsWith("{")) {
+                rest = rest.substring(1, Math.max(1, rest.indexOf(':')));
+            }
+            try {
+                keysByProduct.computeIfAbsent(Long.valueOf(rest), k -> new ArrayList<>()).add(key);
+            } catch (NumberFormatException e) {
+                log.warn("无法解析的商品用户key: {}", key);
+            }
+        }
+        if (keysByProduct.isEmpty()) {
+            return 0;
+        }
+        for (SeckillProduct product : seckillProductMapper.selectByIds(keysByProduct.keySet())) {
+            if (endedBefore == null || product.getEndTime().isAfter(endedBefore)) {
+                keysByProduct.remove(product.getId());
+            }
+        }
+        List<String> ended = keysByProduct.values().stream().flatMap(List::stream).toList();
+        if (!ended.isEmpty()) {
+            stringRedisTemplate.unlink(ended);
+        }
+        return ended.size();
+    }
+
+    // 均衡商品各分片库存，使各分片差值不超过1
+    public void rebalance(Long productId) {
+        int total = getShardCount(productId);
+        if (total <= 1) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            keys.add(stockKey(productId, i, total));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return;
+        }
+        long[] stocks = new long[total];
+        long sum = 0;
+        long max = Long.MIN_VALUE;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < total; i++) {
+            stocks[i] = values.get(i) == null ? 0 : Long.parseLong(values.get(i));
+            sum += stocks[i];
+            max = Math.max(max, stocks[i]);
+            min = Math.min(min, stocks[i]);
+        }
+        if (max - min <= 1) {
+            return;
+        }
+        // 按 多余分片 -> 不足分片 配对，每对用一次lua原子转移（源分片不足时只转移剩余部分），
+        // 转移过程中库存始终在某个分片上，不会出现所有分片同时为0，中断也不会丢失库存
+        long[] diff = new long[total];
+        for (int i = 0; i < total; i++) {
+            diff[i] = stocks[i] - (sum / total + (i < sum % total ? 1 : 0));
+        }
+        int to = 0;
+        for (int from = 0; from < total; from++) {
+            while (diff[from] > 0) {
+                while (to < total && diff[to] >= 0) {
+                    to++;
+                }
+                if (to >= total) {
+                    break;
+                }
+                long count = Math.min(diff[from], -diff[to]);
+                try {
+                    Long moved = stringRedisTemplate.execute(STOCK_MOVE_SCRIPT,
+                            List.of(keys.get(from), keys.get(to)), String.valueOf(count));
+                    if (moved == null || moved < count) {
+                        // 源分片已被秒杀扣减，本轮不再从该分片转出
+                        diff[to] += moved == null ? 0 : moved;
+                        break;
+                    }
+                } catch (Exception e) {
+                    // 两个分片不在同一slot（redis集群）时脚本执行失败，不转移，由秒杀时借用相邻分片兜底
+                    log.warn("商品库存分片转移失败: {} -> {}", keys.get(from), keys.get(to), e);
+                    return;
+                }
+                diff[from] -= count;
+                diff[to] += count;
+            }
+        }
+        log.debug("商品库存分片均衡完成: {}", productId);
+    }
+}
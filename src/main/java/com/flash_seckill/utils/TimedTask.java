@@ -6,12 +6,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.flash_seckill.constants.RedisConstants.*;
 
@@ -25,36 +31,97 @@ public class TimedTask {
     private RedissonClient redissonClient;
     @Autowired
     private SeckillProductMapper seckillProductMapper;
+    @Autowired
+    private StockUtil stockUtil;
+    @Autowired
+    private SalePrewarmer salePrewarmer;
+    @Autowired
+    private HeatUtil heatUtil;
+    @Autowired
+    private RankSnapshot rankSnapshot;
 
-    // 每5分钟更新一次秒杀商品热度排行榜（前15名）
+    // 排行榜商品数
+    private static final int RANK_SIZE = 15;
+
+    // 商品结束多久后回收下单记录（秒）
+    @Value("${seckill.reclaim.grace-seconds:3600}")
+    private long reclaimGraceSeconds;
+    // 每批回收的key数
+    @Value("${seckill.reclaim.batch-size:500}")
+    private int reclaimBatchSize;
+
+    // 每分钟更新一次秒杀商品热度排行榜（前15名）
+    // 只计算窗口内有热度的商品，在临时key中构建后 RENAME 替换，读取方不会看到构建到一半的排行榜
     @Scheduled(cron = "0 * * * * ?")
     public void updatePopularity() {
-        // 获取锁
         RLock lock = redissonClient.getLock(LOCK_HEAT_KEY);
+        try {
+            if (lock.tryLock(0, 30, TimeUnit.SECONDS)) {
+                Map<String, Double> scores = heatUtil.decayedScores();
+                Map<Long, Double> ranked = new LinkedHashMap<>();
+                scores.entrySet().stream()
+                        .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                        .limit(RANK_SIZE)
+                        .forEach(e -> ranked.put(Long.valueOf(e.getKey()), e.getValue()));
+                if (ranked.isEmpty()) {
+                    stringRedisTemplate.delete(RANK_ALL_KEY);
+                } else {
+                    Set<ZSetOperations.TypedTuple<String>> top = ranked.entrySet().stream()
+                            .map(e -> ZSetOperations.TypedTuple.of(e.getKey().toString(), e.getValue()))
+                            .collect(Collectors.toSet());
+                    stringRedisTemplate.delete(RANK_ALL_TMP_KEY);
+                    stringRedisTemplate.opsForZSet().add(RANK_ALL_TMP_KEY, top);
+                    stringRedisTemplate.rename(RANK_ALL_TMP_KEY, RANK_ALL_KEY);
+                }
+                // 发布补全商品信息后的排行榜快照
+                rankSnapshot.publish(ranked);
+                log.info("更新排行榜成功，活跃商品数：{}", scores.size());
+            }
+        } catch (Exception e) {
+            log.error("更新排行榜失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // 每秒均衡一次分片商品的库存分片
+    @Scheduled(fixedDelay = 1000)
+    public void rebalanceStock() {
+        RLock lock = redissonClient.getLock(LOCK_STOCK_REBALANCE_KEY);
         try {
             if (lock.tryLock(0, 10, TimeUnit.SECONDS)) {
-                Collection<Long> ids = seckillProductMapper.idList();
-                // 遍历所有seckillProduct
-                for (Long id : ids) {
-                    String heatKey = PRODUCT_HEAT_KEY + id + ":";
-                    // 获取点击数
-                    Long clickCount = stringRedisTemplate.opsForValue().get(heatKey + "clickCount") == null
-                            ? 0 : Long.parseLong(stringRedisTemplate.opsForValue().get(heatKey + "clickCount").toString());
-                    // 获取收藏数
-                    Long collectCount = stringRedisTemplate.opsForValue().get(heatKey + "collectCount") == null
-                            ? 0 : Long.parseLong(stringRedisTemplate.opsForValue().get(heatKey + "collectCount").toString());
-                    // 计算热度
-                    long heatValue = (long) (clickCount + collectCount * 3);
-                    // 更新Redis有序集合
-                    stringRedisTemplate.opsForZSet().add(RANK_ALL_KEY, id.toString(), heatValue);
-                    // 保留前15名
-                    stringRedisTemplate.opsForZSet().removeRange(RANK_ALL_KEY, 0, -16);
+                Set<String> ids = stringRedisTemplate.opsForSet().members(SHARDED_PRODUCT_KEY);
+                if (ids == null) {
+                    return;
+                }
+                for (String id : ids) {
+                    stockUtil.rebalance(Long.valueOf(id));
+                }
+            }
+        } catch (Exception e) {
+            log.error("库存分片均衡失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
 
+    // 秒杀开始前预热库存、商品缓存和商品过滤器（预热窗口内每次都会执行，写入均为幂等）
+    @Scheduled(fixedDelayString = "${seckill.prewarm.interval-millis:30000}")
+    public void prewarm() {
+        RLock lock = redissonClient.getLock(LOCK_PREWARM_KEY);
+        try {
+            if (lock.tryLock(0, 60, TimeUnit.SECONDS)) {
+                int count = salePrewarmer.prewarm();
+                if (count > 0) {
+                    log.info("秒杀预热完成，商品数：{}", count);
                 }
             }
-            log.info("更新排行榜成功");
         } catch (Exception e) {
-            log.error("更新失败");
+            log.error("秒杀预热失败", e);
         } finally {
             if (lock.isHeldByCurrentThread()) {
                 lock.unlock();
@@ -62,7 +129,48 @@ public class TimedTask {
         }
     }
 
-    // todo 定时清除库存为0的商品的用户限购
-    // todo 每天清除商品热度
-    // todo 秒杀开始前 5 分钟，将商品库存加载到 Redis
+    // 启动后清理一次旧版热度计数key（热度改为分桶后不再读写），清理完成后写入标记，之后的节点和重启直接跳过
+    @Scheduled(initialDelayString = "${seckill.heat.legacy-cleanup-delay-millis:60000}", fixedDelay = Long.MAX_VALUE)
+    public void cleanupLegacyHeat() {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(PRODUCT_HEAT_LEGACY_CLEANED_KEY))) {
+            return;
+        }
+        RLock lock = redissonClient.getLock(LOCK_HEAT_CLEANUP_KEY);
+        try {
+            if (lock.tryLock(0, 300, TimeUnit.SECONDS)) {
+                if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(PRODUCT_HEAT_LEGACY_CLEANED_KEY))) {
+                    return;
+                }
+                int count = heatUtil.cleanupLegacyKeys();
+                stringRedisTemplate.opsForValue().set(PRODUCT_HEAT_LEGACY_CLEANED_KEY, "1");
+                log.info("清理旧版热度计数key完成，key数：{}", count);
+            }
+        } catch (Exception e) {
+            log.error("清理旧版热度计数key失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // 定时回收已结束商品的下单用户记录（用户限购只在售卖期间需要）及已删除商品的收藏用户记录
+    @Scheduled(fixedDelayString = "${seckill.reclaim.interval-millis:600000}")
+    public void reclaimBuyers() {
+        RLock lock = redissonClient.getLock(LOCK_RECLAIM_KEY);
+        try {
+            if (lock.tryLock(0, 300, TimeUnit.SECONDS)) {
+                int count = stockUtil.reclaimBuyers(LocalDateTime.now().minusSeconds(reclaimGraceSeconds), reclaimBatchSize);
+                if (count > 0) {
+                    log.info("回收已结束商品的下单记录，key数：{}", count);
+                }
+            }
+        } catch (Exception e) {
+            log.error("回收下单记录失败", e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
 }
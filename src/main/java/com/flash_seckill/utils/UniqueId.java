@@ -1,12 +1,26 @@
 package com.flash_seckill.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 全局唯一id：时间戳(秒) << 32 | 当天序列号
+ * 序列号按号段从redis批量租用（INCRBY icr:{prefix}:{date} step），节点内无锁分配，
+ * 当前号段用掉80%时异步预取下一号段，下单路径上不再每次访问redis
+ */
+@Slf4j
 @Component
 public class UniqueId {
 
@@ -14,11 +28,25 @@ public class UniqueId {
     private static final long BEGIN_TIMESTAMP = 1640995200L;
     // 序列号位数
     private static final int COUNT_BITS = 32;
+    // 日期格式
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
 
     private final StringRedisTemplate stringRedisTemplate;
+    // 号段长度
+    private final long step;
+    // 各前缀的号段分配器
+    private final ConcurrentHashMap<String, Allocator> allocators = new ConcurrentHashMap<>();
+    // 号段预取线程
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "unique-id-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public UniqueId(StringRedisTemplate stringRedisTemplate) {
+    public UniqueId(StringRedisTemplate stringRedisTemplate,
+                    @Value("${seckill.id.segment-step:1000}") long step) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.step = step;
     }
 
     // 生成id
@@ -27,11 +55,88 @@ public class UniqueId {
         LocalDateTime now = LocalDateTime.now();
         long nowsecond = now.toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowsecond - BEGIN_TIMESTAMP;
-        // 序列号
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 指定用于生成什么的id
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyprefix + ":" + date);
+        // 序列号（指定用于生成什么的id）
+        long count = allocators.computeIfAbsent(keyprefix, Allocator::new).next(now.toLocalDate());
 
         return timestamp << COUNT_BITS | count;
     }
+
+    // 从redis租用一个号段
+    private Segment lease(String keyprefix, LocalDate date) {
+        String key = "icr:" + keyprefix + ":" + date.format(DATE_FORMATTER);
+        long end = stringRedisTemplate.opsForValue().increment(key, step);
+        return new Segment(date, end - step + 1, end, step);
+    }
+
+    // 单个前缀的号段分配器
+    private class Allocator {
+        private final String keyprefix;
+        private volatile Segment current;
+        private CompletableFuture<Segment> prefetched;
+
+        private Allocator(String keyprefix) {
+            this.keyprefix = keyprefix;
+        }
+
+        private long next(LocalDate date) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.date.equals(date)) {
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.end) {
+                        if (value == segment.prefetchAt) {
+                            prefetch(segment);
+                        }
+                        return value;
+                    }
+                }
+                // 号段用完或跨天，切换号段
+                switchSegment(segment, date);
+            }
+        }
+
+        // 异步预取下一号段
+        private synchronized void prefetch(Segment segment) {
+            if (current != segment || prefetched != null) {
+                return;
+            }
+            LocalDate date = segment.date;
+            prefetched = CompletableFuture.supplyAsync(() -> lease(keyprefix, date), prefetchExecutor);
+        }
+
+        private synchronized void switchSegment(Segment exhausted, LocalDate date) {
+            if (current != exhausted) {
+                // 其他线程已切换
+                return;
+            }
+            Segment next = null;
+            if (prefetched != null) {
+                try {
+                    next = prefetched.join();
+                } catch (Exception e) {
+                    log.warn("预取号段失败，同步租用：{}", keyprefix, e);
+                }
+                prefetched = null;
+            }
+            if (next == null || !next.date.equals(date)) {
+                next = lease(keyprefix, date);
+            }
+            current = next;
+        }
+    }
+
+    private static class Segment {
+        private final LocalDate date;
+        private final AtomicLong cursor;
+        private final long end;
+        // 分配到该值时触发预取
+        private final long prefetchAt;
+
+        private Segment(LocalDate date, long start, long end, long step) {
+            this.date = date;
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = start + step * 4 / 5;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+---@diagnostic disable: undefined-global
+
+-- 商品准入预算 key（每个窗口按剩余库存的倍数重置）
+local budgetKey = KEYS[1]
+-- KEYS[2..] 为商品的库存分片 key，新窗口时读取剩余库存
+
+local multiple = tonumber(ARGV[1])  -- 预算为剩余库存的倍数
+local chunk = tonumber(ARGV[2])     -- 本次租用的数量
+local ttl = ARGV[3]                 -- 预算窗口（秒）
+
+local budget = redis.call('get', budgetKey)
+if (budget == false) then
+    -- 新窗口，按剩余库存重置预算
+    local stock = 0
+    for i = 2, #KEYS do
+        stock = stock + (tonumber(redis.call('get', KEYS[i])) or 0)
+    end
+    -- 库存未加载或已为0时仍保留少量预算，让请求到达秒杀脚本完成懒加载或售罄标记
+    budget = math.max(1, stock) * multiple
+    redis.call('set', budgetKey, budget, 'EX', ttl)
+else
+    budget = tonumber(budget)
+end
+
+-- 返回租到的数量，0 表示本窗口预算已用完
+local leased = math.min(chunk, budget)
+if (leased > 0) then
+    redis.call('decrby', budgetKey, leased)
+end
+return leased
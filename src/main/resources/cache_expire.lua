@@ -0,0 +1,19 @@
+---@diagnostic disable: undefined-global
+
+-- 标记商品缓存逻辑过期：只改写 expireTime，不读取和回写整个缓存数据，
+-- 与并发的缓存重建之间不会用旧数据覆盖新数据
+local key = KEYS[1]
+
+local value = redis.call('get', key)
+if (not value or value == '') then
+    return 0
+end
+
+-- 只替换顶层的 expireTime（缓存数据中的字符串引号均已转义，不会被匹配）
+local replaced, count = string.gsub(value, '"expireTime":%d+', '"expireTime":0', 1)
+if (count == 0) then
+    -- 没有逻辑过期时间的旧格式，读取时已视为过期
+    return 0
+end
+redis.call('set', key, replaced)
+return 1
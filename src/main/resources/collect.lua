@@ -0,0 +1,21 @@
+---@diagnostic disable: undefined-global
+
+-- 收藏用户 key
+local collectorKey = KEYS[1]
+
+-- ARGV[1] 为收藏用户存储方式（set 或 bitmap），其后为用户ID（bitmap 存储方式下为位偏移）
+local bitmap = ARGV[1] == 'bitmap'
+-- 新收藏的用户数（已收藏的用户不计入）
+local added = 0
+
+for i = 2, #ARGV do
+    if (bitmap) then
+        if (redis.call('setbit', collectorKey, ARGV[i], 1) == 0) then
+            added = added + 1
+        end
+    else
+        added = added + redis.call('sadd', collectorKey, ARGV[i])
+    end
+end
+
+return added
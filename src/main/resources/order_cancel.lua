@@ -0,0 +1,22 @@
+---@diagnostic disable: undefined-global
+
+-- 取消未支付订单，KEYS[1] 为订单状态 key（每个订单单独调用，集群下各订单key可位于不同slot）
+local stateKey = KEYS[1]
+local cancelTime = ARGV[1]  -- 取消时间（毫秒）
+
+if (redis.call('exists', stateKey) == 0) then
+    -- 订单状态不存在，返回状态码 2
+    return 2
+end
+
+local status = redis.call('hget', stateKey, 'status')
+if (status == '0') then
+    -- 取消成功，返回状态码 1
+    redis.call('hset', stateKey, 'status', '2', 'cancelTime', cancelTime)
+    return 1
+elseif (status == '2') then
+    -- 已在redis中取消（上次处理可能中断），返回状态码 3
+    return 3
+end
+-- 已支付，返回状态码 0
+return 0
@@ -0,0 +1,26 @@
+---@diagnostic disable: undefined-global
+
+-- 订单状态 key（hash：userId、productId、status、createTime、payTime、cancelTime）
+local stateKey = KEYS[1]
+
+local userId = ARGV[1]      -- 用户ID
+local payTime = ARGV[2]     -- 支付时间（毫秒）
+
+-- 订单状态不存在，返回状态码 1
+if (redis.call('exists', stateKey) == 0) then
+    return 1
+end
+
+-- 不是本人的订单，返回状态码 2
+if (redis.call('hget', stateKey, 'userId') ~= userId) then
+    return 2
+end
+
+-- 订单不是未支付状态，返回状态码 3
+if (redis.call('hget', stateKey, 'status') ~= '0') then
+    return 3
+end
+
+-- 支付成功，返回状态码 0
+redis.call('hset', stateKey, 'status', '1', 'payTime', payTime)
+return 0
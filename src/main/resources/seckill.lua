@@ -1,23 +1,34 @@
 ---@diagnostic disable: undefined-global
 
--- 获取传入的参数
-local productId = ARGV[1]  -- 商品
-local userId = ARGV[2]      -- 用户ID
+-- 库存 key，用于存储商品剩余库存数量（分片模式下为用户所在分片的库存）
+local stockKey = KEYS[1]
+-- 下订单 key，存储已下单用户，防止重复下单（分片模式下与库存分片位于同一slot）
+local orderKey = KEYS[2]
 
+-- 获取传入的参数
+local member = ARGV[1]      -- 用户ID（bitmap 存储方式下为位偏移）
+local bitmap = ARGV[2] == 'bitmap'  -- 下单用户存储方式：set 或 bitmap
 
--- 库存 key，用于存储商品剩余库存数量
-local stockKey = 'product:stock:' .. productId
--- 下订单 key，使用集合存储已下单用户ID，防止重复下单
-local orderKey = 'product:user:' .. productId
+-- 库存未加载，返回状态码 3（由调用方从数据库加载后重试）
+local stock = tonumber(redis.call('get', stockKey))
+if (stock == nil) then
+    return 3
+end
 
 -- 检查库存是否充足
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+if (stock <= 0) then
     -- 库存不足，返回状态码 1
     return 1
 end
 
 -- 检查用户是否已经下过单
-if (redis.call('sismember', orderKey, userId) == 1) then
+local ordered
+if (bitmap) then
+    ordered = redis.call('getbit', orderKey, member) == 1
+else
+    ordered = redis.call('sismember', orderKey, member) == 1
+end
+if (ordered) then
     -- 用户已经下过单，返回状态码 2
     return 2
 end
@@ -25,8 +36,12 @@ end
 -- 执行秒杀操作
 -- 库存减 1
 redis.call('incrby', stockKey , -1)
--- 将用户ID添加到已下单集合中
-redis.call('sadd', orderKey, userId)
+-- 记录下单用户
+if (bitmap) then
+    redis.call('setbit', orderKey, member, 1)
+else
+    redis.call('sadd', orderKey, member)
+end
 
 -- 秒杀成功，返回状态码 0
-return 0
\ No newline at end of file
+return 0
@@ -0,0 +1,55 @@
+---@diagnostic disable: undefined-global
+
+-- 批量秒杀：同一商品（分片）在一个批次窗口内的所有请求
+-- 库存 key
+local stockKey = KEYS[1]
+-- 下订单 key，存储已下单用户，防止重复下单
+local orderKey = KEYS[2]
+
+-- ARGV[1] 为下单用户存储方式（set 或 bitmap），其后为各请求的用户ID（bitmap 存储方式下为位偏移）
+local bitmap = ARGV[1] == 'bitmap'
+local stock = tonumber(redis.call('get', stockKey))
+local taken = 0
+-- 每个用户的结果，顺序与 ARGV[2..] 一致
+local result = {}
+
+-- 库存未加载，整批返回状态码 3（由调用方从数据库加载后重试）
+if (stock == nil) then
+    for i = 2, #ARGV do
+        result[i - 1] = 3
+    end
+    return result
+end
+
+for i = 2, #ARGV do
+    local member = ARGV[i]
+    local ordered
+    if (bitmap) then
+        ordered = redis.call('getbit', orderKey, member) == 1
+    else
+        ordered = redis.call('sismember', orderKey, member) == 1
+    end
+    if (stock - taken <= 0) then
+        -- 库存不足，返回状态码 1
+        result[i - 1] = 1
+    elseif (ordered) then
+        -- 用户已经下过单（包括同一批次内的重复请求），返回状态码 2
+        result[i - 1] = 2
+    else
+        -- 秒杀成功，记录下单用户，返回状态码 0
+        if (bitmap) then
+            redis.call('setbit', orderKey, member, 1)
+        else
+            redis.call('sadd', orderKey, member)
+        end
+        taken = taken + 1
+        result[i - 1] = 0
+    end
+end
+
+-- 整批一次性扣减库存
+if (taken > 0) then
+    redis.call('incrby', stockKey, -taken)
+end
+
+return result
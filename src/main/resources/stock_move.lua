@@ -0,0 +1,17 @@
+---@diagnostic disable: undefined-global
+
+-- 在两个库存分片之间原子转移库存，源分片不足时只转移剩余部分
+local sourceKey = KEYS[1]
+local targetKey = KEYS[2]
+local count = tonumber(ARGV[1])
+
+local stock = tonumber(redis.call('get', sourceKey))
+if (stock == nil or stock <= 0) then
+    return 0
+end
+
+local moved = math.min(count, stock)
+redis.call('incrby', sourceKey, -moved)
+redis.call('incrby', targetKey, moved)
+-- 返回实际转移的数量
+return moved
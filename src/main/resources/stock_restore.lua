@@ -0,0 +1,21 @@
+---@diagnostic disable: undefined-global
+
+-- 订单取消归还库存：只为确实移除了下单记录的用户归还库存，重复执行不会多归还
+local stockKey = KEYS[1]
+local orderKey = KEYS[2]
+local bitmap = ARGV[1] == 'bitmap'  -- 下单用户存储方式：set 或 bitmap
+
+local removed = 0
+for i = 2, #ARGV do
+    if (bitmap) then
+        removed = removed + redis.call('setbit', orderKey, ARGV[i], 0)
+    else
+        removed = removed + redis.call('srem', orderKey, ARGV[i])
+    end
+end
+
+if (removed > 0) then
+    redis.call('incrby', stockKey, removed)
+end
+-- 返回归还的库存数
+return removed
@@ -0,0 +1,15 @@
+---@diagnostic disable: undefined-global
+
+-- 从库存分片中扣减指定数量，库存不足时不扣减
+local stockKey = KEYS[1]
+local count = tonumber(ARGV[1])
+
+local stock = tonumber(redis.call('get', stockKey))
+if (stock == nil or stock < count) then
+    -- 库存不足，返回 0
+    return 0
+end
+
+redis.call('incrby', stockKey, -count)
+-- 扣减成功，返回 1
+return 1